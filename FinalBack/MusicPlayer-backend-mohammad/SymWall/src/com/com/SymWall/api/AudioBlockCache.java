@@ -0,0 +1,205 @@
+package com.com.SymWall.api;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Memory-mapped cache of fixed-size blocks of popular audio files.
+ *
+ * Every lookup is counted in a small count-min sketch. A block is only mapped once it has been
+ * asked for {@link #ADMIT_THRESHOLD} times, and when the budget is full it only replaces the least
+ * recently used block if it is asked for more often than that block (TinyLFU style). The sketch is
+ * halved periodically so yesterday's hits fade out. Mapped blocks live outside the Java heap; an
+ * evicted mapping is released by the GC once no stream still holds a slice of it.
+ */
+public class AudioBlockCache {
+
+    public static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int ADMIT_THRESHOLD = 2;
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 1 << 14;
+
+    private final long budgetBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<BlockKey, MappedByteBuffer> blocks = new LinkedHashMap<>(64, 0.75f, true);
+    private long usedBytes = 0;
+
+    private final AtomicLongArray sketch = new AtomicLongArray(SKETCH_DEPTH * SKETCH_WIDTH);
+    private final LongAdder sketchIncrements = new LongAdder();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder admissions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public AudioBlockCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Returns a read-only view of the whole block that contains {@code position}, mapping it first if it
+     * has become hot enough, or null when the caller should read from the file itself.
+     */
+    public ByteBuffer block(String path, FileChannel file, long position) throws IOException {
+        BlockKey key = new BlockKey(path, position / BLOCK_SIZE);
+        int frequency = recordAccess(key);
+
+        lock.lock();
+        try {
+            MappedByteBuffer cached = blocks.get(key);
+            if (cached != null) {
+                hits.increment();
+                return cached.asReadOnlyBuffer();
+            }
+            misses.increment();
+            if (frequency < ADMIT_THRESHOLD) {
+                return null;
+            }
+
+            long start = key.index * BLOCK_SIZE;
+            long length = Math.min(BLOCK_SIZE, file.size() - start);
+            if (length <= 0 || length > budgetBytes || !makeRoom(length, frequency)) {
+                rejections.increment();
+                return null;
+            }
+            MappedByteBuffer mapped = file.map(FileChannel.MapMode.READ_ONLY, start, length);
+            blocks.put(key, mapped);
+            usedBytes += length;
+            admissions.increment();
+            return mapped.asReadOnlyBuffer();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Drops every cached block of a file, e.g. after it was replaced on disk.
+    public void invalidate(String path) {
+        lock.lock();
+        try {
+            Iterator<Map.Entry<BlockKey, MappedByteBuffer>> it = blocks.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<BlockKey, MappedByteBuffer> entry = it.next();
+                if (entry.getKey().path.equals(path)) {
+                    usedBytes -= entry.getValue().capacity();
+                    it.remove();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock. Evicts nothing unless the candidate fits once the colder blocks are gone.
+    private boolean makeRoom(long length, int candidateFrequency) {
+        long needed = usedBytes + length - budgetBytes;
+        int victims = 0;
+        for (Map.Entry<BlockKey, MappedByteBuffer> victim : blocks.entrySet()) {
+            if (needed <= 0) {
+                break;
+            }
+            if (estimate(victim.getKey()) >= candidateFrequency) {
+                return false;
+            }
+            needed -= victim.getValue().capacity();
+            victims++;
+        }
+        if (needed > 0) {
+            return false;
+        }
+        Iterator<Map.Entry<BlockKey, MappedByteBuffer>> eldest = blocks.entrySet().iterator();
+        for (int i = 0; i < victims; i++) {
+            usedBytes -= eldest.next().getValue().capacity();
+            eldest.remove();
+            evictions.increment();
+        }
+        return true;
+    }
+
+    private int recordAccess(BlockKey key) {
+        int hash = key.hashCode();
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < SKETCH_DEPTH; row++) {
+            min = Math.min(min, sketch.incrementAndGet(slot(row, hash)));
+        }
+        sketchIncrements.increment();
+        if (sketchIncrements.sum() >= 10L * SKETCH_WIDTH) {
+            age();
+        }
+        return (int) Math.min(min, Integer.MAX_VALUE);
+    }
+
+    private int estimate(BlockKey key) {
+        int hash = key.hashCode();
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < SKETCH_DEPTH; row++) {
+            min = Math.min(min, sketch.get(slot(row, hash)));
+        }
+        return (int) Math.min(min, Integer.MAX_VALUE);
+    }
+
+    private void age() {
+        sketchIncrements.reset();
+        for (int i = 0; i < sketch.length(); i++) {
+            sketch.set(i, sketch.get(i) >>> 1);
+        }
+    }
+
+    private static int slot(int row, int hash) {
+        int h = hash * (0x9E3779B1 + row * 0x7F4A7C15);
+        h ^= h >>> 16;
+        return row * SKETCH_WIDTH + (h & (SKETCH_WIDTH - 1));
+    }
+
+    public long hits() { return hits.sum(); }
+    public long misses() { return misses.sum(); }
+    public long evictions() { return evictions.sum(); }
+    public long admissions() { return admissions.sum(); }
+    public long rejections() { return rejections.sum(); }
+
+    public long usedBytes() {
+        lock.lock();
+        try {
+            return usedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AudioBlockCache{used=%d/%d bytes, hits=%d, misses=%d, admissions=%d, rejections=%d, evictions=%d}",
+                usedBytes(), budgetBytes, hits(), misses(), admissions(), rejections(), evictions());
+    }
+
+    private static final class BlockKey {
+        private final String path;
+        private final long index;
+
+        BlockKey(String path, long index) {
+            this.path = path;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof BlockKey other)) return false;
+            return index == other.index && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, index);
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.com.SymWall.api;
+
+import com.com.SymWall.repository.MusicRepository;
+import com.com.SymWall.server.LineFramer;
+import com.com.SymWall.util.Log;
+import com.com.SymWall.util.Metrics;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves audio files of catalog tracks on port 8086.
+ *
+ * The client sends one JSON line per range it wants:
+ * <pre>{"trackId":"...","offset":0,"length":65536}</pre>
+ * ({@code length} -1 or missing means "to the end of the file") and gets back a JSON header line
+ * followed by exactly {@code length} raw bytes. Requests on one connection are answered in order,
+ * so seeking is just another request.
+ *
+ * File bytes go from the page cache to the socket with {@link FileChannel#transferTo} and never
+ * enter the Java heap. One selector thread drives all streams; each writable event moves at most
+ * {@link #CHUNK_BYTES} per stream, so a fast reader cannot starve the others and a slow one just
+ * waits for its socket to drain.
+ *
+ * Blocks of popular tracks are served from {@link AudioBlockCache} mappings instead; open files are
+ * shared between streams through {@link FileHandlePool}.
+ */
+public class AudioStreamService {
+
+    private static final int PORT = 8086;
+    private static final long CHUNK_BYTES = 256 * 1024;
+    private static final int MAX_REQUEST_LINE = 4096;
+    private static final int MAX_OPEN_FILES = 256;
+    private static final long CACHE_BUDGET_BYTES = Long.getLong("symwall.audio.cacheMb", 256) * 1024 * 1024;
+    // Track rows are usually changed by another process, so a cached path is looked up again after this.
+    private static final long PATH_TTL_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("symwall.audio.pathTtlMs", 60_000));
+    private static final int MAX_CACHED_PATHS = 10_000;
+
+    private static volatile AudioStreamService active;
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(MAX_REQUEST_LINE);
+    // JDBC lookups must not run on the selector thread.
+    private final ExecutorService lookups = Executors.newFixedThreadPool(4);
+    private final MusicRepository musicRepository = new MusicRepository();
+    private final Map<String, CachedPath> filePaths = new ConcurrentHashMap<>();
+    private final FileHandlePool fileHandles = new FileHandlePool(MAX_OPEN_FILES);
+    private final AudioBlockCache blockCache = new AudioBlockCache(CACHE_BUDGET_BYTES);
+
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    public AudioStreamService() throws IOException {
+        this.selector = Selector.open();
+        registerGauges();
+    }
+
+    public static void main(String[] args) throws IOException {
+        AudioStreamService service = new AudioStreamService();
+        // its own process, so it serves its own /metrics; give it another port when SocketServer runs on the same host
+        StatsService.start(Integer.getInteger("symwall.stats.port", StatsService.DEFAULT_PORT));
+        service.start();
+    }
+
+    private void registerGauges() {
+        Metrics.gauge("audio_active_streams", activeStreams::get);
+        Metrics.gauge("audio_bytes_sent_total", bytesSent::get);
+        Metrics.gauge("audio_open_files", fileHandles::openFiles);
+        Metrics.gauge("audio_cache_hits_total", blockCache::hits);
+        Metrics.gauge("audio_cache_misses_total", blockCache::misses);
+        Metrics.gauge("audio_cache_evictions_total", blockCache::evictions);
+        Metrics.gauge("audio_cache_admissions_total", blockCache::admissions);
+        Metrics.gauge("audio_cache_rejections_total", blockCache::rejections);
+        Metrics.gauge("audio_cache_used_bytes", blockCache::usedBytes);
+    }
+
+    public void start() throws IOException {
+        active = this;
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(PORT));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            System.out.println("Audio Stream Service started at port " + PORT);
+
+            while (true) {
+                selector.select();
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isValid() && key.isAcceptable()) {
+                            accept(serverChannel);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            ((Stream) key.attachment()).onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            ((Stream) key.attachment()).onWritable();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        Log.warn("audio", "client_error", "error", e.getMessage());
+                        if (key.attachment() instanceof Stream stream) {
+                            stream.close();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        Stream stream = new Stream(channel);
+        stream.key = channel.register(selector, SelectionKey.OP_READ, stream);
+    }
+
+    // Called by code that changes the musics table. No-op when no audio service runs in this process.
+    public static void invalidate(String trackId) {
+        AudioStreamService service = active;
+        if (service != null) {
+            CachedPath removed = service.filePaths.remove(trackId);
+            if (removed != null) {
+                service.blockCache.invalidate(removed.path);
+            }
+        }
+    }
+
+    private String lookupFilePath(String trackId) throws SQLException {
+        long now = System.nanoTime();
+        CachedPath cached = filePaths.get(trackId);
+        if (cached != null && now - cached.loadedAt < PATH_TTL_NANOS) {
+            return cached.path;
+        }
+        String path = musicRepository.findFilePath(trackId);
+        // free the mapped blocks of a file the track no longer points to
+        if (cached != null && !cached.path.equals(path)) {
+            blockCache.invalidate(cached.path);
+        }
+        if (path == null) {
+            filePaths.remove(trackId);
+            return null;
+        }
+        if (filePaths.size() >= MAX_CACHED_PATHS) {
+            filePaths.values().removeIf(entry -> now - entry.loadedAt >= PATH_TTL_NANOS);
+            if (filePaths.size() >= MAX_CACHED_PATHS) {
+                filePaths.clear();
+            }
+        }
+        filePaths.put(trackId, new CachedPath(path, now));
+        return path;
+    }
+
+    private static final class CachedPath {
+        private final String path;
+        private final long loadedAt;
+
+        CachedPath(String path, long loadedAt) {
+            this.path = path;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    // One client connection; only touched on the selector thread.
+    private final class Stream {
+        private final SocketChannel channel;
+        private final LineFramer framer = new LineFramer(MAX_REQUEST_LINE);
+        private final Queue<String> requests = new ArrayDeque<>();
+        private SelectionKey key;
+        private boolean busy = false;
+        private boolean inputClosed = false;
+
+        private ByteBuffer header;
+        private FileHandlePool.Handle file;
+        private long position;
+        private long remaining;
+        // Mapped block covering the current position, or null when it is read from the file.
+        private long blockIndex = -1;
+        private ByteBuffer block;
+
+        Stream(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void onReadable() throws IOException {
+            readBuffer.clear();
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                inputClosed = true;
+                if (!busy && requests.isEmpty()) {
+                    close();
+                }
+                updateInterest();
+                return;
+            }
+            readBuffer.flip();
+            framer.feed(readBuffer, requests::add);
+            startNext();
+        }
+
+        void onWritable() throws IOException {
+            if (header != null) {
+                channel.write(header);
+                if (header.hasRemaining()) {
+                    return;
+                }
+                header = null;
+            }
+            while (file != null && remaining > 0) {
+                long sent = sendChunk(Math.min(remaining, CHUNK_BYTES));
+                if (sent <= 0) {
+                    return; // socket buffer full, wait for the next writable event
+                }
+                position += sent;
+                remaining -= sent;
+                bytesSent.addAndGet(sent);
+                if (remaining > 0) {
+                    return; // give other streams a turn
+                }
+            }
+            finishCurrent();
+        }
+
+        private long sendChunk(long limit) throws IOException {
+            long index = position / AudioBlockCache.BLOCK_SIZE;
+            if (index != blockIndex) {
+                // one cache lookup per block entered, so a single play counts once per block
+                blockIndex = index;
+                block = blockCache.block(file.path(), file.channel(), position);
+            }
+            int offset = (int) (position - index * AudioBlockCache.BLOCK_SIZE);
+            if (block != null) {
+                block.limit((int) Math.min(block.capacity(), offset + limit));
+                block.position(offset);
+                return channel.write(block);
+            }
+            return file.channel().transferTo(position, Math.min(limit, AudioBlockCache.BLOCK_SIZE - offset), channel);
+        }
+
+        private void startNext() {
+            if (busy) {
+                return;
+            }
+            String line = requests.poll();
+            if (line == null) {
+                if (inputClosed) {
+                    close();
+                }
+                return;
+            }
+            busy = true;
+            String trackId;
+            long offset;
+            long length;
+            try {
+                JSONObject request = new JSONObject(line);
+                trackId = request.getString("trackId");
+                offset = request.optLong("offset", 0);
+                length = request.optLong("length", -1);
+            } catch (JSONException e) {
+                respondError("Invalid request");
+                return;
+            }
+            lookups.execute(() -> {
+                String path;
+                try {
+                    path = lookupFilePath(trackId);
+                } catch (SQLException | RuntimeException e) {
+                    // the stream is busy until it answers, so it must answer even when the lookup blows up
+                    Log.warn("audio", "lookup_failed", "trackId", trackId, "error", e.getMessage());
+                    execute(() -> {
+                        if (channel.isOpen()) {
+                            respondError("Audio lookup failed");
+                        }
+                    });
+                    return;
+                }
+                execute(() -> begin(trackId, path, offset, length));
+            });
+        }
+
+        private void begin(String trackId, String path, long offset, long length) {
+            if (!channel.isOpen()) {
+                return;
+            }
+            if (path == null) {
+                respondError("Track not found");
+                return;
+            }
+            try {
+                FileHandlePool.Handle opened = fileHandles.acquire(path);
+                long size = opened.channel().size();
+                if (offset < 0 || offset > size) {
+                    fileHandles.release(opened);
+                    respondError("Offset out of range");
+                    return;
+                }
+                long available = size - offset;
+                long count = length < 0 ? available : Math.min(length, available);
+
+                JSONObject response = new JSONObject();
+                response.put("status", "success");
+                response.put("trackId", trackId);
+                response.put("size", size);
+                response.put("offset", offset);
+                response.put("length", count);
+                header = ByteBuffer.wrap((response + "\n").getBytes(StandardCharsets.UTF_8));
+                file = opened;
+                position = offset;
+                remaining = count;
+                blockIndex = -1;
+                block = null;
+                activeStreams.incrementAndGet();
+                updateInterest();
+            } catch (IOException e) {
+                respondError("Audio file unavailable");
+            }
+        }
+
+        private void respondError(String message) {
+            JSONObject response = new JSONObject();
+            response.put("status", "error");
+            response.put("message", message);
+            header = ByteBuffer.wrap((response + "\n").getBytes(StandardCharsets.UTF_8));
+            updateInterest();
+        }
+
+        private void finishCurrent() {
+            if (file != null) {
+                fileHandles.release(file);
+                file = null;
+                block = null;
+                activeStreams.decrementAndGet();
+            }
+            busy = false;
+            updateInterest();
+            startNext();
+        }
+
+        private void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+            int ops = inputClosed ? 0 : SelectionKey.OP_READ;
+            if (header != null || file != null) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                if (file != null) {
+                    fileHandles.release(file);
+                    file = null;
+                    activeStreams.decrementAndGet();
+                }
+                channel.close();
+            } catch (IOException e) {
+                Log.warn("audio", "close_failed", "error", e.getMessage());
+            }
+        }
+    }
+}
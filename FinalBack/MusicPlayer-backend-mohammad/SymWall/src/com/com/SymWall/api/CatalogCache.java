@@ -0,0 +1,83 @@
+package com.com.SymWall.api;
+
+import com.com.SymWall.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the whole music catalog as ready-to-send UTF-8 JSON. Writers call {@link #invalidate()} and the
+ * snapshot is rebuilt in the background on a single thread; readers never touch the database once the
+ * first snapshot exists (until then SocketApiService streams straight from the table).
+ * A periodic refresh also picks up rows written by other processes (e.g. MusicFolderImporter run standalone).
+ */
+public class CatalogCache {
+
+    private static final long PERIODIC_REFRESH_SECONDS = 60;
+
+    private static volatile CatalogCache active;
+
+    private final ScheduledExecutorService refresher;
+    private final AtomicBoolean refreshQueued = new AtomicBoolean(false);
+    private volatile byte[] snapshot;
+
+    private CatalogCache() {
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "catalog-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static CatalogCache start() {
+        CatalogCache cache = new CatalogCache();
+        cache.refresher.scheduleWithFixedDelay(cache::scheduleRefresh,
+                PERIODIC_REFRESH_SECONDS, PERIODIC_REFRESH_SECONDS, TimeUnit.SECONDS);
+        active = cache;
+        cache.scheduleRefresh();
+        return cache;
+    }
+
+    // Called by code that changes the musics table. No-op when no cache runs in this process.
+    public static void invalidate() {
+        CatalogCache cache = active;
+        if (cache != null) {
+            cache.scheduleRefresh();
+        }
+    }
+
+    /**
+     * @return the current snapshot, or null while the first one is still being built
+     */
+    public byte[] current() {
+        return snapshot;
+    }
+
+    private void scheduleRefresh() {
+        // Bursts of invalidations collapse into a single reload.
+        if (refreshQueued.compareAndSet(false, true)) {
+            refresher.execute(() -> {
+                refreshQueued.set(false);
+                reload();
+            });
+        }
+    }
+
+    private void reload() {
+        long start = System.nanoTime();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(snapshot != null ? snapshot.length : 64 * 1024);
+            int tracks = CatalogStreamer.stream(out);
+            snapshot = out.toByteArray();
+            Log.info("catalog", "snapshot_rebuilt", "tracks", tracks, "bytes", snapshot.length,
+                    "ms", (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | SQLException e) {
+            Log.error("catalog", "snapshot_failed", e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.com.SymWall.api;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursor for catalog pages: the (name, id) of the last row the client received.
+ * Clients must treat the encoded string as a token and only send it back.
+ */
+public class CatalogCursor {
+
+    private static final char SEPARATOR = '\u0000';
+
+    private final String name;
+    private final String id;
+
+    public CatalogCursor(String name, String id) {
+        this.name = name;
+        this.id = id;
+    }
+
+    public String getName() { return name; }
+    public String getId() { return id; }
+
+    public String encode() {
+        String raw = name + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token was not produced by {@link #encode()}
+     */
+    public static CatalogCursor decode(String token) {
+        String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        int separator = raw.indexOf(SEPARATOR);
+        if (separator < 0) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        return new CatalogCursor(raw.substring(0, separator), raw.substring(separator + 1));
+    }
+}
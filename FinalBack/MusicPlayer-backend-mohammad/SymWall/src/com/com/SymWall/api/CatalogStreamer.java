@@ -0,0 +1,63 @@
+package com.com.SymWall.api;
+
+import com.com.SymWall.util.DB;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Writes the catalog as a JSON array row by row while the ResultSet is being read.
+ * Rows come from the server in batches of {@link #FETCH_SIZE} and go out through a fixed-size buffer,
+ * so memory use does not depend on how many tracks there are and the client gets the first bytes
+ * as soon as the first batch arrives.
+ */
+public class CatalogStreamer {
+
+    static final int FETCH_SIZE = 500;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private CatalogStreamer() {
+    }
+
+    /**
+     * @return number of tracks written
+     */
+    public static int stream(OutputStream out) throws IOException, SQLException {
+        String sql = "SELECT id, name, singer, duration_seconds, genre, file_path FROM musics";
+        int rows = 0;
+
+        try (Connection conn = DB.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setFetchSize(FETCH_SIZE);
+
+            JsonWriter json = new JsonWriter(new BufferedWriter(
+                    new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE));
+            try (ResultSet rs = stmt.executeQuery()) {
+                json.beginArray();
+                while (rs.next()) {
+                    json.beginObject();
+                    json.name("id").value(rs.getString("id"));
+                    json.name("name").value(rs.getString("name"));
+                    json.name("singer").value(rs.getString("singer"));
+                    json.name("duration_seconds").value(rs.getInt("duration_seconds"));
+                    json.name("genre").value(rs.getString("genre"));
+                    json.name("file_path").value(rs.getString("file_path"));
+                    json.endObject();
+                    rows++;
+                }
+                json.endArray();
+            }
+            // flush only: closing would also close the caller's stream
+            json.flush();
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,100 @@
+package com.com.SymWall.api;
+
+import com.com.SymWall.util.Log;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps a bounded number of audio files open so that many streams of the same track share one
+ * descriptor and the long tail of rarely played files does not exhaust file handles.
+ * Handles are reference counted: an evicted file is closed when its last stream releases it.
+ */
+public class FileHandlePool {
+
+    private final int maxOpen;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Handle> open = new LinkedHashMap<>(64, 0.75f, true);
+
+    public FileHandlePool(int maxOpen) {
+        this.maxOpen = maxOpen;
+    }
+
+    public Handle acquire(String path) throws IOException {
+        lock.lock();
+        try {
+            Handle handle = open.get(path);
+            if (handle == null) {
+                handle = new Handle(path, FileChannel.open(Path.of(path), StandardOpenOption.READ));
+                open.put(path, handle);
+                evictIdle();
+            }
+            handle.references++;
+            return handle;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release(Handle handle) {
+        lock.lock();
+        try {
+            handle.references--;
+            // by identity: the path may have been opened again since this handle was evicted
+            if (handle.references == 0 && open.get(handle.path) != handle) {
+                closeQuietly(handle);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int openFiles() {
+        lock.lock();
+        try {
+            return open.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock. Files still being streamed are dropped from the map but closed on release.
+    private void evictIdle() {
+        Iterator<Map.Entry<String, Handle>> it = open.entrySet().iterator();
+        while (open.size() > maxOpen && it.hasNext()) {
+            Handle handle = it.next().getValue();
+            it.remove();
+            if (handle.references == 0) {
+                closeQuietly(handle);
+            }
+        }
+    }
+
+    private static void closeQuietly(Handle handle) {
+        try {
+            handle.channel.close();
+        } catch (IOException e) {
+            Log.warn("audio", "close_failed", "file", handle.path, "error", e.getMessage());
+        }
+    }
+
+    public static final class Handle {
+        private final String path;
+        private final FileChannel channel;
+        private int references = 0;
+
+        private Handle(String path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        public String path() { return path; }
+        public FileChannel channel() { return channel; }
+    }
+}
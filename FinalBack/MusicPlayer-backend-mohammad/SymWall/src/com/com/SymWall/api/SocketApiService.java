@@ -1,52 +1,31 @@
 package com.com.SymWall.api;
 
-import com.com.SymWall.util.DB;
-import com.google.gson.Gson;
+import com.com.SymWall.util.Log;
 
-import java.io.BufferedWriter;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.nio.charset.StandardCharsets;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class SocketApiService {
 
     private static final int PORT = 8085;
+    private static final int CLIENT_THREADS = 16;
 
+    // Usage: SocketApiService [snapshot|stream]
     public static void main(String[] args) {
+        boolean streamOnly = args.length > 0 && args[0].equalsIgnoreCase("stream");
+        CatalogCache catalog = streamOnly ? null : CatalogCache.start();
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENT_THREADS);
+
         try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            System.out.println("Socket API Service started at port " + PORT);
+            System.out.println("Socket API Service started at port " + PORT + (streamOnly ? " (streaming mode)" : ""));
 
             while (true) {
-                try (Socket clientSocket = serverSocket.accept()) {
-                    System.out.println("New client connected: " + clientSocket.getInetAddress());
-
-                    // خواندن دیتا به صورت داینامیک از ResultSet و ذخیره در لیست Map
-                    List<Map<String, Object>> data = fetchMusicData();
-
-                    // تبدیل لیست به JSON
-                    String json = new Gson().toJson(data);
-                    System.out.println("Sending JSON: " + json);
-
-                    // ارسال JSON به کلاینت
-                    try (BufferedWriter writer = new BufferedWriter(
-                            new OutputStreamWriter(clientSocket.getOutputStream(), StandardCharsets.UTF_8))) {
-
-                        writer.write(json);
-                        writer.flush();
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error handling client: " + e.getMessage());
-                    e.printStackTrace();
-                }
+                Socket clientSocket = serverSocket.accept();
+                // سرویس‌دهی در ترد جدا تا accept منتظر کلاینت کند نماند
+                clients.execute(() -> serve(clientSocket, catalog));
             }
 
         } catch (Exception e) {
@@ -55,29 +34,24 @@ public class SocketApiService {
         }
     }
 
-    private static List<Map<String, Object>> fetchMusicData() {
-        List<Map<String, Object>> list = new ArrayList<>();
-        String sql = "SELECT * FROM musics";
-
-        try (Connection conn = DB.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-
-            while (rs.next()) {
-                Map<String, Object> row = new HashMap<>();
-                row.put("id", rs.getString("id"));
-                row.put("name", rs.getString("name"));
-                row.put("singer", rs.getString("singer"));
-                row.put("duration_seconds", rs.getInt("duration_seconds"));
-                row.put("genre", rs.getString("genre"));
-                row.put("file_path", rs.getString("file_path"));
-                list.add(row);
+    private static void serve(Socket clientSocket, CatalogCache catalog) {
+        try (Socket socket = clientSocket) {
+            OutputStream out = socket.getOutputStream();
+
+            // ارسال snapshot آماده به کلاینت، بدون کوئری دیتابیس
+            byte[] json = catalog != null ? catalog.current() : null;
+            if (json != null) {
+                out.write(json);
+                out.flush();
+                Log.info("catalog", "sent", "ip", socket.getInetAddress().getHostAddress(), "bytes", json.length);
+                return;
             }
 
-        } catch (SQLException e) {
-            e.printStackTrace();
+            // حالت stream یا cache هنوز سرد است: مستقیم از ResultSet به سوکت
+            int tracks = CatalogStreamer.stream(out);
+            Log.info("catalog", "streamed", "ip", socket.getInetAddress().getHostAddress(), "tracks", tracks);
+        } catch (Exception e) {
+            Log.error("catalog", "client_failed", e, "ip", clientSocket.getInetAddress().getHostAddress());
         }
-
-        return list;
     }
 }
@@ -0,0 +1,45 @@
+package com.com.SymWall.api;
+
+import com.com.SymWall.util.Log;
+import com.com.SymWall.util.Metrics;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves {@link Metrics#render()} at {@code http://127.0.0.1:8089/metrics} for a local scraper.
+ * Bound to loopback only; the port is {@code -Dsymwall.stats.port}, and 0 turns the endpoint off.
+ */
+public class StatsService {
+
+    public static final int DEFAULT_PORT = 8089;
+
+    private StatsService() {
+    }
+
+    public static void start(int port) {
+        if (port <= 0) {
+            return;
+        }
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 8);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = Metrics.render().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            // the JDK server runs handlers on its own single dispatcher thread by default
+            server.start();
+            System.out.println("Stats endpoint at http://127.0.0.1:" + port + "/metrics");
+        } catch (IOException e) {
+            Log.warn("stats", "start_failed", "port", port, "error", e.getMessage());
+        }
+    }
+}
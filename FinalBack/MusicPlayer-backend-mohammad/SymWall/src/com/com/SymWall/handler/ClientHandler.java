@@ -1,44 +1,188 @@
 package com.com.SymWall.handler;
 
+import com.com.SymWall.server.AdmissionController;
+import com.com.SymWall.server.ConnectionTimeouts;
+import com.com.SymWall.server.PushHub;
+import com.com.SymWall.server.PushSession;
+import com.com.SymWall.server.TrackedConnection;
+import com.com.SymWall.util.Log;
+
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.DataFormatException;
+
+public class ClientHandler implements Runnable, TrackedConnection {
+    private static final int PIPELINE_WINDOW = 16;
 
-public class ClientHandler implements Runnable {
     private final Socket clientSocket;
     private final RequestHandler requestHandler;
+    private final Executor requestWorkers;
+    private final AdmissionController admission;
+    private final String clientIp;
+    private final ConnectionTimeouts timeouts;
+    private volatile long lastActivityNanos = System.nanoTime();
+    private volatile long pendingWriteSinceNanos = 0;
+    private volatile PushSession push;
+    // پاسخ‌ها ممکن است هم‌زمان از چند ترد نوشته شوند
+    private final ReentrantLock writeLock = new ReentrantLock();
 
-    public ClientHandler(Socket clientSocket) {
+    /**
+     * @param admission the connection must already be counted by {@link AdmissionController#tryOpenConnection()};
+     *                  it is released when this handler finishes
+     */
+    public ClientHandler(Socket clientSocket, RequestHandler requestHandler, Executor requestWorkers,
+                         AdmissionController admission, ConnectionTimeouts timeouts) {
         this.clientSocket = clientSocket;
-        this.requestHandler = new RequestHandler();
+        this.requestHandler = requestHandler;
+        this.requestWorkers = requestWorkers;
+        this.admission = admission;
+        this.clientIp = clientSocket.getInetAddress().getHostAddress();
+        this.timeouts = timeouts;
     }
 
     @Override
     public void run() {
-        System.out.println("New client connected from: " + clientSocket.getInetAddress());
+        Log.info("net", "connected", "ip", clientIp, "transport", "blocking");
+        lastActivityNanos = System.nanoTime();
+        timeouts.watch(this);
         try (
-                BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(clientSocket.getInputStream(), StandardCharsets.UTF_8));
-                PrintWriter writer = new PrintWriter(
-                        new OutputStreamWriter(clientSocket.getOutputStream(), StandardCharsets.UTF_8), true)
+                BufferedInputStream in = new BufferedInputStream(clientSocket.getInputStream());
+                BufferedOutputStream out = new BufferedOutputStream(clientSocket.getOutputStream())
         ) {
-            String message;
-            while ((message = reader.readLine()) != null) {
-                System.out.println("Raw message received: " + message);
-                String response = requestHandler.handleRequest(message.trim());
-                writer.println(response);
-                System.out.println("Response sent: " + response);
+            // اولین بایت مشخص می‌کند کلاینت JSON خطی می‌فرستد یا فریم باینری
+            in.mark(1);
+            int first = in.read();
+            in.reset();
+            if (first == (FrameCodec.MAGIC & 0xFF)) {
+                serveFrames(in, out);
+            } else if (first >= 0) {
+                serveLines(in, out);
             }
         } catch (IOException e) {
-            System.err.println("Error handling client: " + e.getMessage());
-            e.printStackTrace();
+            Log.warn("net", "client_error", "ip", clientIp, "error", e.getMessage());
+        } catch (DataFormatException e) {
+            Log.warn("net", "corrupt_frame", "ip", clientIp, "error", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } finally {
+            if (push != null) {
+                push.close();
+            }
+            admission.connectionClosed();
             try {
-                System.out.println("Closing connection with: " + clientSocket.getInetAddress());
+                Log.info("net", "closed", "ip", clientIp);
                 clientSocket.close();
             } catch (IOException e) {
-                System.err.println("Error closing socket: " + e.getMessage());
+                Log.warn("net", "close_failed", "ip", clientIp, "error", e.getMessage());
+            }
+        }
+    }
+
+    private void serveLines(InputStream in, OutputStream out) throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Consumer<String> sink = response -> write(out, ByteBuffer.wrap((response + "\n").getBytes(StandardCharsets.UTF_8)), response);
+        push = new PushSession(PushHub.get(), sink, () -> pendingWriteSinceNanos != 0);
+        RequestPipeline pipeline = new RequestPipeline(requestHandler, requestWorkers, PIPELINE_WINDOW, admission, clientIp, push, sink);
+
+        String message;
+        while ((message = reader.readLine()) != null) {
+            lastActivityNanos = System.nanoTime();
+            Log.debug("wire", "received", "ip", clientIp, "payload", Log.payload(message));
+            pipeline.submit(message.trim());
+        }
+        pipeline.awaitIdle();
+    }
+
+    private void serveFrames(InputStream in, OutputStream out) throws IOException, InterruptedException, DataFormatException {
+        DataInputStream input = new DataInputStream(in);
+        byte[] preamble = new byte[FrameCodec.PREAMBLE.length];
+        input.readFully(preamble);
+        if (!Arrays.equals(preamble, FrameCodec.PREAMBLE)) {
+            throw new IOException("Bad binary preamble");
+        }
+        Consumer<String> sink = response -> write(out, FrameCodec.encodeJson(response), response);
+        push = new PushSession(PushHub.get(), sink, () -> pendingWriteSinceNanos != 0);
+        RequestPipeline pipeline = new RequestPipeline(requestHandler, requestWorkers, PIPELINE_WINDOW, admission, clientIp, push, sink);
+
+        while (true) {
+            int length;
+            try {
+                length = input.readInt();
+            } catch (EOFException e) {
+                break;
+            }
+            int typeAndFlags = input.readUnsignedByte();
+            if (length < 0 || length > FrameCodec.MAX_FRAME_BYTES) {
+                throw new IOException("Frame of " + length + " bytes is not allowed");
             }
+            byte[] body = new byte[length];
+            input.readFully(body);
+            if (FrameCodec.type(typeAndFlags) != FrameCodec.TYPE_JSON) {
+                throw new IOException("Unsupported inbound frame type " + FrameCodec.type(typeAndFlags));
+            }
+            lastActivityNanos = System.nanoTime();
+            String message = new String(FrameCodec.payload(typeAndFlags, body), StandardCharsets.UTF_8);
+            Log.debug("wire", "frame_received", "ip", clientIp, "payload", Log.payload(message));
+            pipeline.submit(message);
+        }
+        pipeline.awaitIdle();
+    }
+
+    private void write(OutputStream out, ByteBuffer bytes, String response) {
+        writeLock.lock();
+        try {
+            pendingWriteSinceNanos = System.nanoTime();
+            out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            out.flush();
+            lastActivityNanos = System.nanoTime();
+            Log.debug("wire", "sent", "ip", clientIp, "payload", Log.payload(response));
+        } catch (IOException e) {
+            Log.warn("net", "write_failed", "ip", clientIp, "error", e.getMessage());
+        } finally {
+            pendingWriteSinceNanos = 0;
+            writeLock.unlock();
+        }
+        // push events wait while a write is in progress
+        if (push != null) {
+            push.resume();
+        }
+    }
+
+    @Override
+    public long lastActivityNanos() {
+        return lastActivityNanos;
+    }
+
+    // BufferedReader does not expose half-read lines; a stalled line counts as idle time.
+    @Override
+    public long partialReadSinceNanos() {
+        return 0;
+    }
+
+    @Override
+    public long pendingWriteSinceNanos() {
+        return pendingWriteSinceNanos;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !clientSocket.isClosed();
+    }
+
+    // Closing the socket wakes the thread blocked in readLine or write.
+    @Override
+    public void reap(String reason) {
+        Log.info("net", "reaped", "ip", clientIp, "reason", reason);
+        try {
+            clientSocket.close();
+        } catch (IOException e) {
+            Log.warn("net", "close_failed", "ip", clientIp, "error", e.getMessage());
         }
     }
 }
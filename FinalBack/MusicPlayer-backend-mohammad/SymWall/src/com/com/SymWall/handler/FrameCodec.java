@@ -0,0 +1,109 @@
+package com.com.SymWall.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary wire format for the 8081 port, negotiated by the first bytes a client sends.
+ *
+ * A client that starts with {@link #PREAMBLE} speaks frames for the rest of the connection:
+ * <pre>
+ *   int32 length (big endian, payload only) | byte type | payload
+ * </pre>
+ * The low bits of the type byte say what the payload is; only {@link #TYPE_JSON} is defined and frames
+ * of any other type are refused. {@link #FLAG_DEFLATE} marks a deflate-compressed payload. Anything else is treated as the
+ * old newline-delimited JSON protocol. 0xB1 can never start a text line because it is a UTF-8
+ * continuation byte.
+ */
+public final class FrameCodec {
+
+    public static final byte MAGIC = (byte) 0xB1;
+    public static final byte[] PREAMBLE = {MAGIC, 'S', 'W', 1};
+    public static final int HEADER_BYTES = 5;
+    public static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+    public static final int TYPE_JSON = 0x01;
+    public static final int FLAG_DEFLATE = 0x80;
+    private static final int TYPE_MASK = 0x7F;
+
+    // Payloads smaller than this are not worth compressing.
+    public static final int COMPRESSION_THRESHOLD = 1024;
+
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+
+    private FrameCodec() {
+    }
+
+    public static ByteBuffer encodeJson(String json) {
+        return encode(TYPE_JSON, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Returns header and payload in one buffer ready to be written.
+    public static ByteBuffer encode(int type, byte[] payload) {
+        int flags = 0;
+        byte[] body = payload;
+        if (payload.length >= COMPRESSION_THRESHOLD) {
+            byte[] compressed = deflate(payload);
+            if (compressed.length < payload.length) {
+                body = compressed;
+                flags = FLAG_DEFLATE;
+            }
+        }
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + body.length);
+        frame.putInt(body.length);
+        frame.put((byte) (type | flags));
+        frame.put(body);
+        frame.flip();
+        return frame;
+    }
+
+    public static int type(int typeAndFlags) {
+        return typeAndFlags & TYPE_MASK;
+    }
+
+    /**
+     * Undoes the compression of a received frame body if its flag is set.
+     *
+     * @throws DataFormatException if the body is corrupt or inflates beyond {@link #MAX_FRAME_BYTES}
+     */
+    public static byte[] payload(int typeAndFlags, byte[] body) throws DataFormatException {
+        if ((typeAndFlags & FLAG_DEFLATE) == 0) {
+            return body;
+        }
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(body);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length * 4);
+        byte[] chunk = new byte[8192];
+        while (!inflater.finished()) {
+            int n = inflater.inflate(chunk);
+            if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new DataFormatException("Truncated compressed frame");
+            }
+            out.write(chunk, 0, n);
+            if (out.size() > MAX_FRAME_BYTES) {
+                throw new DataFormatException("Frame inflates beyond " + MAX_FRAME_BYTES + " bytes");
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] payload) {
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(payload);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 2 + 64);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            out.write(chunk, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
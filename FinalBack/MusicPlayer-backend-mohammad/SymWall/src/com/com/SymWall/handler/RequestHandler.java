@@ -1,236 +1,203 @@
 package com.com.SymWall.handler;
 
-import com.com.SymWall.model.SubscriptionType;
-import com.com.SymWall.model.User;
+import com.com.SymWall.handler.action.Action;
+import com.com.SymWall.handler.action.ActionRegistry;
+import com.com.SymWall.handler.action.BatchAction;
+import com.com.SymWall.handler.action.DeleteAccountAction;
+import com.com.SymWall.handler.action.GetCatalogPageAction;
+import com.com.SymWall.handler.action.GetNonceAction;
+import com.com.SymWall.handler.action.GetSaltAction;
+import com.com.SymWall.handler.action.GetUserStatusAction;
+import com.com.SymWall.handler.action.LoginAction;
+import com.com.SymWall.handler.action.PingAction;
+import com.com.SymWall.handler.action.ResponseWriter;
+import com.com.SymWall.handler.action.ResumeSessionAction;
+import com.com.SymWall.handler.action.SignupAction;
+import com.com.SymWall.handler.action.SubscribeAction;
+import com.com.SymWall.handler.action.UpdatePremiumStatusAction;
 import com.com.SymWall.model.UserManager;
+import com.com.SymWall.repository.MusicRepository;
+import com.com.SymWall.server.NonceStore;
+import com.com.SymWall.server.PushSession;
+import com.com.SymWall.server.SessionTokens;
+import com.com.SymWall.util.LatencyHistogram;
+import com.com.SymWall.util.Log;
+import com.com.SymWall.util.Metrics;
+import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.util.Base64;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map;
-import java.time.LocalDateTime;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Dispatches 8081 requests to the {@link Action} registered for their {@code action} name.
+ * New request types are added by registering another action in the constructor.
+ * <p>
+ * An envelope may carry the session {@code token} from login_request. It is checked without
+ * touching the user store; a valid one marks the connection as logged in and supplies
+ * {@code data.email} when the request leaves it out.
+ */
 public class RequestHandler {
-    private final UserManager userManager;
-    private final Map<String, String> loginNonces;
+    private static final JSONObject NO_DATA = new JSONObject();
+    private static final ResponseWriter.Key RETRY_AFTER_MS = ResponseWriter.key("retryAfterMs");
+
+    private final ActionRegistry actions;
+    private final SessionTokens sessionTokens;
+    private final Map<String, LatencyHistogram> actionTimers = new ConcurrentHashMap<>();
+
+    /**
+     * @param batchSteps runs the steps of batches; it may be the pool that runs the batches themselves
+     */
+    // BatchAction only keeps the handler; it calls back into it once requests arrive, after construction
+    @SuppressWarnings("this-escape")
+    public RequestHandler(UserManager userManager, NonceStore loginNonces, SessionTokens sessionTokens,
+                          MusicRepository musicRepository, Executor batchSteps) {
+        this.sessionTokens = sessionTokens;
+        this.actions = new ActionRegistry()
+                .register(new GetNonceAction(userManager, loginNonces))
+                .register(new SignupAction(userManager))
+                .register(new LoginAction(userManager, loginNonces, sessionTokens))
+                .register(new ResumeSessionAction(userManager, sessionTokens))
+                .register(new GetSaltAction(userManager))
+                .register(new DeleteAccountAction(userManager, sessionTokens))
+                .register(new UpdatePremiumStatusAction(userManager, sessionTokens))
+                .register(new GetUserStatusAction(userManager))
+                .register(new GetCatalogPageAction(musicRepository))
+                .register(new PingAction())
+                .register(new SubscribeAction(true))
+                .register(new SubscribeAction(false));
+        // steps of a batch are dispatched through this handler again
+        actions.register(new BatchAction(this, batchSteps));
+    }
 
-    public RequestHandler() {
-        userManager = new UserManager();
-        loginNonces = new ConcurrentHashMap<>();
+    public ActionRegistry actions() {
+        return actions;
     }
 
     public String handleRequest(String message) {
+        long start = System.nanoTime();
+        JSONObject request;
         try {
-            System.out.println("Received request: " + message);
-            JSONObject request = new JSONObject(message);
-            String action = request.getString("action");
-            JSONObject data = request.getJSONObject("data");
-            JSONObject response = new JSONObject();
+            request = new JSONObject(message);
+        } catch (JSONException e) {
+            Log.warn("request", "malformed", "error", e.getMessage(), "payload", Log.payload(message));
+            recordAction("invalid", start, true);
+            return errorResponse(e, null);
+        }
+        return handleRequest(request);
+    }
 
-            switch (action) {
-                case "get_nonce": {
-                    String email = data.getString("email");
-                    User user = userManager.getUserByEmail(email);
-                    if (user != null) {
-                        String nonce = UUID.randomUUID().toString();
-                        loginNonces.put(email, nonce);
-                        response.put("status", "success");
-                        response.put("nonce", nonce);
-                        response.put("action", "get_nonce_response");
-                    } else {
-                        response.put("status", "error");
-                        response.put("message", "User not found");
-                        response.put("action", "get_nonce_response");
-                    }
-                    break;
-                }
+    /**
+     * Same as {@link #handleRequest(String)} for an already parsed envelope. An optional
+     * {@code requestId} is copied into the response so pipelined clients can match it up.
+     */
+    public String handleRequest(JSONObject request) {
+        return handleRequest(request, null);
+    }
 
-                case "signup_request": {
-                    String newUsername = data.getString("username");
-                    String newEmail = data.getString("email");
-                    String passwordHash = data.getString("passwordHash");
-                    String passwordSalt = data.getString("passwordSalt");
-                    if (userManager.getUserByEmail(newEmail) != null) {
-                        response.put("status", "error");
-                        response.put("message", "Email already exists");
-                    } else {
-                        User newUser = new User(newUsername, newEmail, passwordHash, passwordSalt);
-                        userManager.addUser(newUser);
-                        JSONObject userData = new JSONObject();
-                        userData.put("id", newUser.getId());
-                        userData.put("username", newUser.getUsername());
-                        userData.put("email", newUser.getEmail());
-                        response.put("status", "success");
-                        response.put("message", "Registration successful");
-                        response.put("data", userData);
-                    }
-                    response.put("action", "signup_response");
-                    break;
+    /**
+     * @param session push state of the connection the request came from, or null
+     */
+    public String handleRequest(JSONObject request, PushSession session) {
+        long start = System.nanoTime();
+        Object requestId = request.opt("requestId");
+        // metric name: the action, "unknown" for unsupported ones, "invalid" when it is missing
+        String timedAction = "invalid";
+        boolean failed = true;
+        try (ResponseWriter out = ResponseWriter.begin()) {
+            String name = request.getString("action");
+            if (Log.enabled(Log.Level.DEBUG, "request")) {
+                Log.debug("request", "received", "action", name, "requestId", requestId, "payload", Log.payload(request.toString()));
+            }
+            Action<?> action = actions.find(name);
+            if (action == null) {
+                timedAction = "unknown";
+                out.error("Unknown action").string(ResponseWriter.ACTION, "error");
+            } else {
+                timedAction = name;
+                JSONObject data = request.optJSONObject("data");
+                String token = request.optString("token", null);
+                if (token != null && action instanceof BatchAction) {
+                    // a batch has no email of its own; each step checks the token against its data
+                    data = (data != null ? data : new JSONObject()).put(BatchAction.TOKEN, token);
+                    token = null;
                 }
-
-                case "login_request": {
-                    String email = data.getString("email");
-                    String clientPasswordHash = data.getString("passwordHash");
-                    User user = userManager.getUserByEmail(email);
-                    String nonce = loginNonces.get(email);
-                    if (user != null && nonce != null) {
-                        String storedPasswordHash = user.getPasswordHash();
-                        String expectedHash = hashSHA256Base64(storedPasswordHash + nonce);
-                        if (expectedHash.equals(clientPasswordHash)) {
-                            user.checkAndDowngradeIfExpired(); // چک انقضا اشتراک
-                            JSONObject userData = new JSONObject();
-                            userData.put("id", user.getId());
-                            userData.put("username", user.getUsername());
-                            userData.put("email", user.getEmail());
-                            userData.put("credit", user.getCredit());
-                            userData.put("subscription", user.getSubscription().toString());
-                            userData.put("subscriptionExpireAt", user.getSubscriptionExpireAt() != null ? user.getSubscriptionExpireAt().toString() : JSONObject.NULL);
-                            response.put("status", "success");
-                            response.put("message", "Login successful");
-                            response.put("data", userData);
-                            loginNonces.remove(email);
-                        } else {
-                            response.put("status", "error");
-                            response.put("message", "Invalid email or password");
-                        }
-                    } else {
-                        response.put("status", "error");
-                        response.put("message", "Invalid email, password, or nonce missing");
-                    }
-                    response.put("action", "login_response");
-                    break;
+                if (token != null && (data = withSession(token, data, session)) == null) {
+                    out.error("Session expired, please log in again").string(ResponseWriter.ACTION, "session_invalid");
+                } else {
+                    run(action, data != null ? data : NO_DATA, session, out);
+                    out.string(ResponseWriter.ACTION, action.responseName());
                 }
+            }
+            if (requestId != null) {
+                out.value(ResponseWriter.REQUEST_ID, requestId);
+            }
+            failed = out.failed();
+            Log.debug("request", "completed", "action", name, "requestId", requestId, "failed", failed);
+            return out.finish();
 
-                case "get_salt": {
-                    String email = data.getString("email");
-                    User user = userManager.getUserByEmail(email);
-                    if (user != null) {
-                        response.put("status", "success");
-                        response.put("salt", user.getPasswordSalt());
-                        response.put("action", "get_salt_response");
-                    } else {
-                        response.put("status", "error");
-                        response.put("message", "User not found");
-                        response.put("action", "get_salt_response");
-                    }
-                    break;
-                }
+        } catch (Exception e) {
+            Log.error("request", "failed", e, "action", request.opt("action"), "requestId", requestId);
+            return errorResponse(e, requestId);
+        } finally {
+            recordAction(timedAction, start, failed);
+        }
+    }
 
-                case "delete_account_request": {
-                    String email = data.getString("email");
-                    String clientPasswordHash = data.getString("passwordHash");
-                    User user = userManager.getUserByEmail(email);
-                    if (user != null) {
-                        String storedPasswordHash = user.getPasswordHash();
-                        if (storedPasswordHash.equals(clientPasswordHash)) {
-                            boolean removed = userManager.deleteUser(email);
-                            if (removed) {
-                                response.put("status", "success");
-                                response.put("message", "Account deleted successfully");
-                            } else {
-                                response.put("status", "error");
-                                response.put("message", "Failed to delete account");
-                            }
-                        } else {
-                            response.put("status", "error");
-                            response.put("message", "Invalid password");
-                        }
-                    } else {
-                        response.put("status", "error");
-                        response.put("message", "User not found");
-                    }
-                    response.put("action", "delete_account_response");
-                    break;
-                }
+    // Null when the token is not valid or belongs to another account than data.email.
+    private JSONObject withSession(String token, JSONObject data, PushSession session) {
+        SessionTokens.Claims claims = sessionTokens.verify(token);
+        if (claims == null) {
+            return null;
+        }
+        if (data == null) {
+            data = new JSONObject();
+        }
+        String email = data.optString("email", null);
+        if (email == null) {
+            data.put("email", claims.email);
+        } else if (!email.equals(claims.email)) {
+            return null;
+        }
+        if (session != null) {
+            session.authenticate(claims.email);
+        }
+        return data;
+    }
 
-                case "update_premium_status": {
-                    String email = data.getString("email");
-                    String subscriptionTypeStr = data.getString("subscriptionType");
-                    User user = userManager.getUserByEmail(email);
-                    if (user != null) {
-                        try {
-                            SubscriptionType newPlan = SubscriptionType.valueOf(subscriptionTypeStr);
-                            LocalDateTime expireAt = null;
-                            if (newPlan == SubscriptionType.PREMIUM_1_MONTH) {
-                                expireAt = LocalDateTime.now().plusMonths(1);
-                            } else if (newPlan == SubscriptionType.PREMIUM_3_MONTHS) {
-                                expireAt = LocalDateTime.now().plusMonths(3);
-                            } else if (newPlan == SubscriptionType.PREMIUM_12_MONTHS) {
-                                expireAt = LocalDateTime.now().plusYears(1);
-                            }
-                            user.setSubscription(newPlan);
-                            user.setSubscriptionExpireAt(expireAt);
-                            boolean updated = userManager.updateUser(user);
-                            if (updated) {
-                                response.put("status", "success");
-                                response.put("message", "Subscription updated successfully");
-                            } else {
-                                response.put("status", "error");
-                                response.put("message", "Failed to update user data");
-                            }
-                        } catch (IllegalArgumentException ex) {
-                            response.put("status", "error");
-                            response.put("message", "Invalid subscription type");
-                        }
-                    } else {
-                        response.put("status", "error");
-                        response.put("message", "User not found");
-                    }
-                    response.put("action", "update_premium_status_response");
-                    break;
-                }
+    private static <R> void run(Action<R> action, JSONObject data, PushSession session, ResponseWriter out) throws Exception {
+        action.handle(action.decode(data), session, out);
+    }
 
-                case "get_user_status": {
-                    String email = data.getString("email");
-                    User user = userManager.getUserByEmail(email);
-                    if (user != null) {
-                        user.checkAndDowngradeIfExpired(); // چک انقضا اشتراک
-                        JSONObject userData = new JSONObject();
-                        userData.put("id", user.getId());
-                        userData.put("username", user.getUsername());
-                        userData.put("email", user.getEmail());
-                        userData.put("credit", user.getCredit());
-                        userData.put("subscription", user.getSubscription().toString());
-                        userData.put("createdAt", user.getCreatedAt().toString());
-                        userData.put("subscriptionExpireAt", user.getSubscriptionExpireAt() != null ? user.getSubscriptionExpireAt().toString() : JSONObject.NULL);
-                        response.put("status", "success");
-                        response.put("data", userData);
-                    } else {
-                        response.put("status", "error");
-                        response.put("message", "User not found");
-                    }
-                    response.put("action", "get_user_status_response");
-                    break;
-                }
+    private void recordAction(String action, long startNanos, boolean failed) {
+        LatencyHistogram timer = actionTimers.computeIfAbsent(action, a -> Metrics.timer("action." + a));
+        if (failed) {
+            timer.error();
+        }
+        timer.recordSince(startNanos);
+    }
 
-                default: {
-                    response.put("status", "error");
-                    response.put("message", "Unknown action");
-                    response.put("action", "error");
-                    break;
-                }
+    // Sent instead of a real response when admission control sheds the request.
+    public static String busyResponse(Object requestId, long retryAfterMs) {
+        try (ResponseWriter out = ResponseWriter.begin()) {
+            out.error("Server busy, retry later")
+                    .string(ResponseWriter.ACTION, "busy")
+                    .number(RETRY_AFTER_MS, retryAfterMs);
+            if (requestId != null) {
+                out.value(ResponseWriter.REQUEST_ID, requestId);
             }
-
-            System.out.println("Sending response: " + response.toString());
-            return response.toString();
-
-        } catch (Exception e) {
-            System.err.println("Error processing request: " + e.getMessage());
-            e.printStackTrace();
-            JSONObject errorResponse = new JSONObject();
-            errorResponse.put("status", "error");
-            errorResponse.put("message", "Server error: " + e.getMessage());
-            errorResponse.put("action", "error");
-            return errorResponse.toString();
+            return out.finish();
         }
     }
 
-    private String hashSHA256Base64(String input) throws Exception {
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] hashedBytes = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-        return Base64.getEncoder().encodeToString(hashedBytes);
+    private static String errorResponse(Exception e, Object requestId) {
+        try (ResponseWriter out = ResponseWriter.begin()) {
+            out.error("Server error: " + e.getMessage()).string(ResponseWriter.ACTION, "error");
+            if (requestId != null) {
+                out.value(ResponseWriter.REQUEST_ID, requestId);
+            }
+            return out.finish();
+        }
     }
 }
@@ -0,0 +1,188 @@
+package com.com.SymWall.handler;
+
+import com.com.SymWall.handler.action.BatchAction;
+import com.com.SymWall.server.AdmissionController;
+import com.com.SymWall.server.PushSession;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Per-connection request pipelining. Messages carrying a {@code requestId} run concurrently on the
+ * shared worker pool and their responses are written as soon as they are ready, at most
+ * {@code windowSize} at a time. Messages without one keep the old strictly ordered behaviour:
+ * they wait until nothing is in flight and are answered inline.
+ * Every request first passes the {@link AdmissionController}; shed requests get a "busy" reply at once.
+ * Thread-per-connection callers use {@link #submit}, which waits for room in the window; event-driven
+ * callers use {@link #trySubmit} and retry from the {@code windowFreed} callback.
+ */
+public class RequestPipeline {
+
+    private final RequestHandler requestHandler;
+    private final Executor workers;
+    private final Consumer<String> responseSink;
+    private final int windowSize;
+    private final Semaphore window;
+    private final AdmissionController admission;
+    private final String clientIp;
+    private final PushSession session;
+    private final Runnable windowFreed;
+
+    /**
+     * @param responseSink called from worker threads, so it must be safe for concurrent use
+     * @param session      push state of the connection, or null
+     */
+    public RequestPipeline(RequestHandler requestHandler, Executor workers, int windowSize,
+                           AdmissionController admission, String clientIp, PushSession session,
+                           Consumer<String> responseSink) {
+        this(requestHandler, workers, windowSize, admission, clientIp, session, responseSink, () -> { });
+    }
+
+    /**
+     * @param windowFreed called whenever requests of this connection finish, on the thread that ran them;
+     *                    it must not block
+     */
+    public RequestPipeline(RequestHandler requestHandler, Executor workers, int windowSize,
+                           AdmissionController admission, String clientIp, PushSession session,
+                           Consumer<String> responseSink, Runnable windowFreed) {
+        this.requestHandler = requestHandler;
+        this.windowFreed = windowFreed;
+        this.session = session;
+        this.workers = workers;
+        this.admission = admission;
+        this.clientIp = clientIp;
+        this.responseSink = responseSink;
+        this.windowSize = windowSize;
+        this.window = new Semaphore(windowSize);
+    }
+
+    /**
+     * Blocks while the in-flight window is full, which pushes back on a client that pipelines too much.
+     */
+    public void submit(String message) throws InterruptedException {
+        JSONObject request = parse(message);
+        int permits = permits(request);
+        window.acquire(permits);
+        dispatch(message, request, permits);
+    }
+
+    /**
+     * Like {@link #submit} but never waits: returns false without taking the message when the window is
+     * full. The caller keeps the message and tries again after {@code windowFreed} runs.
+     */
+    public boolean trySubmit(String message) {
+        JSONObject request = parse(message);
+        int permits = permits(request);
+        if (!window.tryAcquire(permits)) {
+            return false;
+        }
+        dispatch(message, request, permits);
+        return true;
+    }
+
+    private static JSONObject parse(String message) {
+        try {
+            return new JSONObject(message);
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    // Unparsable messages are answered inline; ordered ones need the whole window to themselves.
+    private int permits(JSONObject request) {
+        return request == null ? 0 : request.has("requestId") ? 1 : windowSize;
+    }
+
+    private void dispatch(String message, JSONObject request, int permits) {
+        String action = request != null ? request.optString("action", "") : "";
+        JSONObject data = request != null ? request.optJSONObject("data") : null;
+        String account = data != null ? data.optString("email", null) : null;
+        Object requestId = request != null ? request.opt("requestId") : null;
+        long retryAfterMs = "batch".equals(action)
+                ? beginBatch(data)
+                : admission.tryBeginRequest(clientIp, account, action);
+        if (retryAfterMs > 0) {
+            release(permits);
+            responseSink.accept(RequestHandler.busyResponse(requestId, retryAfterMs));
+            return;
+        }
+
+        if (request == null) {
+            try {
+                responseSink.accept(requestHandler.handleRequest(message));
+            } finally {
+                admission.requestFinished();
+            }
+            return;
+        }
+
+        if (requestId == null) {
+            try {
+                responseSink.accept(requestHandler.handleRequest(request, session));
+            } finally {
+                admission.requestFinished();
+                release(permits);
+            }
+            return;
+        }
+
+        try {
+            workers.execute(() -> {
+                try {
+                    responseSink.accept(requestHandler.handleRequest(request, session));
+                } finally {
+                    admission.requestFinished();
+                    release(permits);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            admission.requestFinished();
+            release(permits);
+            throw e;
+        }
+    }
+
+    private void release(int permits) {
+        if (permits > 0) {
+            window.release(permits);
+            windowFreed.run();
+        }
+    }
+
+    // Every step of a batch counts against the rate limits of its own action.
+    private long beginBatch(JSONObject data) {
+        JSONArray steps = data != null ? data.optJSONArray("steps") : null;
+        int count = steps != null ? Math.min(steps.length(), BatchAction.MAX_STEPS) : 0;
+        List<String> actions = new ArrayList<>(count + 1);
+        List<String> accounts = new ArrayList<>(count + 1);
+        for (int i = 0; i < count; i++) {
+            JSONObject step = steps.optJSONObject(i);
+            JSONObject stepData = step != null ? step.optJSONObject("data") : null;
+            actions.add(step != null ? step.optString("action", "") : "");
+            accounts.add(stepData != null ? stepData.optString("email", null) : null);
+        }
+        if (actions.isEmpty()) {
+            actions.add("batch");
+            accounts.add(null);
+        }
+        return admission.tryBeginBatch(clientIp, actions, accounts);
+    }
+
+    // Waits until every pipelined request of this connection has written its response.
+    public void awaitIdle() throws InterruptedException {
+        window.acquire(windowSize);
+        window.release(windowSize);
+    }
+
+    // True when no request of this connection is in flight; the non-blocking form of awaitIdle.
+    public boolean isIdle() {
+        return window.availablePermits() == windowSize;
+    }
+}
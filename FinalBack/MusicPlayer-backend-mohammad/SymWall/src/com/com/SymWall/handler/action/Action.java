@@ -0,0 +1,41 @@
+package com.com.SymWall.handler.action;
+
+import com.com.SymWall.server.PushSession;
+import org.json.JSONObject;
+
+/**
+ * One request type of the 8081 protocol. {@link #decode} turns the envelope's {@code data} object into
+ * a typed request (throwing {@link org.json.JSONException} for missing fields) and {@link #handle}
+ * writes the response fields; the dispatcher adds {@code action} and {@code requestId} itself.
+ *
+ * @param <R> the decoded request
+ */
+public interface Action<R> {
+
+    String name();
+
+    // Value of the "action" field in the response.
+    String responseName();
+
+    R decode(JSONObject data);
+
+    void handle(R request, ResponseWriter out) throws Exception;
+
+    /**
+     * What the dispatcher calls. Actions that work with the caller's connection (subscriptions,
+     * login state) override this one.
+     *
+     * @param session push state of the calling connection, or null when it has none
+     */
+    default void handle(R request, PushSession session, ResponseWriter out) throws Exception {
+        handle(request, out);
+    }
+
+    /**
+     * True when the action does not change user or catalog data, so a batch may run it at the same
+     * time as other read-only steps. Anything else is run strictly in order.
+     */
+    default boolean readOnly() {
+        return false;
+    }
+}
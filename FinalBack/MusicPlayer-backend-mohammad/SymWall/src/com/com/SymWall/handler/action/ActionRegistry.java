@@ -0,0 +1,30 @@
+package com.com.SymWall.handler.action;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actions by request name. Filled once at startup and only read afterwards, so lookups need no locking.
+ */
+public class ActionRegistry {
+
+    private final Map<String, Action<?>> actions = new LinkedHashMap<>();
+
+    public ActionRegistry register(Action<?> action) {
+        if (actions.putIfAbsent(action.name(), action) != null) {
+            throw new IllegalArgumentException("Action already registered: " + action.name());
+        }
+        return this;
+    }
+
+    // null for an unknown name
+    public Action<?> find(String name) {
+        return actions.get(name);
+    }
+
+    public Collection<Action<?>> all() {
+        return Collections.unmodifiableCollection(actions.values());
+    }
+}
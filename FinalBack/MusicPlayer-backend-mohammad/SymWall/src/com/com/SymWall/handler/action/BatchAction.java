@@ -0,0 +1,285 @@
+package com.com.SymWall.handler.action;
+
+import com.com.SymWall.handler.RequestHandler;
+import com.com.SymWall.server.PushSession;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs several actions in one round trip:
+ * {@code {"action":"batch","data":{"steps":[{"action":"get_salt","data":{...}}, ...]}}}.
+ * The response carries one result per step, in step order.
+ *
+ * A string value {@code "${i.path}"} in a step's data is replaced by a field of step i's response,
+ * e.g. {@code "${0.data.email}"}; i must be an earlier step, and if that step failed the dependent
+ * step is skipped. Consecutive {@link Action#readOnly() read-only} steps run in parallel; any other
+ * step waits for everything before it and everything after it waits for it.
+ *
+ * A session {@code token} on the batch envelope is used for every step that does not carry its own.
+ *
+ * Steps run on the shared request workers, which may also be running the batch itself. So the batch
+ * does not just wait for its steps: it runs any ready step that no worker has picked up yet. A pool
+ * full of waiting batches therefore still makes progress, one step at a time per batch.
+ */
+public class BatchAction implements Action<BatchAction.Request> {
+
+    public static final int MAX_STEPS = 16;
+
+    private static final Pattern REFERENCE = Pattern.compile("^\\$\\{(\\d+)\\.([A-Za-z0-9_.]+)}$");
+    private static final ResponseWriter.Key RESULTS = ResponseWriter.key("results");
+    private static final ResponseWriter.Key FAILED_STEPS = ResponseWriter.key("failedSteps");
+    // where the dispatcher puts the envelope's token for us
+    public static final String TOKEN = "token";
+
+    private final RequestHandler requestHandler;
+    private final Executor stepWorkers;
+
+    public BatchAction(RequestHandler requestHandler, Executor stepWorkers) {
+        this.requestHandler = requestHandler;
+        this.stepWorkers = stepWorkers;
+    }
+
+    public static final class Request {
+        final JSONArray steps;
+        final String token;
+
+        Request(JSONArray steps, String token) {
+            this.steps = steps;
+            this.token = token;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "batch";
+    }
+
+    @Override
+    public String responseName() {
+        return "batch_response";
+    }
+
+    @Override
+    public Request decode(JSONObject data) {
+        return new Request(data.getJSONArray("steps"), data.optString(TOKEN, null));
+    }
+
+    @Override
+    public void handle(Request request, ResponseWriter out) {
+        handle(request, null, out);
+    }
+
+    @Override
+    public void handle(Request request, PushSession session, ResponseWriter out) {
+        int count = request.steps.length();
+        if (count == 0 || count > MAX_STEPS) {
+            out.error("A batch needs 1 to " + MAX_STEPS + " steps");
+            return;
+        }
+
+        List<JSONObject> steps = new ArrayList<>(count);
+        List<BitSet> references = new ArrayList<>(count);
+        BitSet referenced = new BitSet(count);
+        for (int i = 0; i < count; i++) {
+            JSONObject step = request.steps.optJSONObject(i);
+            if (step == null || !step.has("action")) {
+                out.error("Step " + i + " has no action");
+                return;
+            }
+            if (name().equals(step.optString("action"))) {
+                out.error("Step " + i + " is a nested batch");
+                return;
+            }
+            BitSet stepReferences = new BitSet(count);
+            collectReferences(step.opt("data"), stepReferences);
+            if (stepReferences.length() > i) {
+                out.error("Step " + i + " refers to a step that is not before it");
+                return;
+            }
+            referenced.or(stepReferences);
+            steps.add(step);
+            references.add(stepReferences);
+        }
+
+        String[] results = new String[count];
+        JSONObject[] parsed = new JSONObject[count];
+        CompletableFuture<?>[] done = new CompletableFuture<?>[count];
+        // steps whose inputs are ready; whoever claims one first, a worker or this thread, runs it
+        BlockingQueue<Runnable> ready = new LinkedBlockingQueue<>();
+        int barrier = -1;
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            Action<?> action = requestHandler.actions().find(steps.get(i).getString("action"));
+            boolean readOnly = action != null && action.readOnly();
+
+            List<CompletableFuture<?>> waitFor = new ArrayList<>();
+            if (!readOnly) {
+                for (int j = barrier + 1; j < i; j++) {
+                    waitFor.add(done[j]);
+                }
+            }
+            if (barrier >= 0) {
+                waitFor.add(done[barrier]);
+            }
+            BitSet stepReferences = references.get(i);
+            for (int j = stepReferences.nextSetBit(0); j >= 0; j = stepReferences.nextSetBit(j + 1)) {
+                waitFor.add(done[j]);
+            }
+
+            CompletableFuture<Void> finished = new CompletableFuture<>();
+            Runnable step = claimOnce(() -> {
+                try {
+                    results[index] = runStep(index, steps.get(index), references.get(index), parsed, request.token, session);
+                    if (referenced.get(index)) {
+                        parsed[index] = new JSONObject(results[index]);
+                    }
+                    finished.complete(null);
+                } catch (RuntimeException e) {
+                    finished.completeExceptionally(e);
+                }
+            });
+            CompletableFuture.allOf(waitFor.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, error) -> {
+                if (error != null) {
+                    finished.completeExceptionally(error);
+                    return;
+                }
+                ready.add(step);
+                try {
+                    stepWorkers.execute(step);
+                } catch (RejectedExecutionException e) {
+                    // left for the batch thread
+                }
+            });
+            done[i] = finished;
+            if (!readOnly) {
+                barrier = i;
+            }
+        }
+        CompletableFuture<Void> all = CompletableFuture.allOf(done);
+        all.whenComplete((ignored, error) -> ready.add(() -> { }));
+        try {
+            while (!all.isDone()) {
+                ready.take().run();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        all.join();
+
+        int failed = 0;
+        out.success().beginArray(RESULTS);
+        for (String result : results) {
+            out.rawValue(result);
+            if (ResponseWriter.isError(result)) {
+                failed++;
+            }
+        }
+        out.endArray().number(FAILED_STEPS, failed);
+    }
+
+    private String runStep(int index, JSONObject step, BitSet references, JSONObject[] parsed, String batchToken,
+                           PushSession session) {
+        for (int j = references.nextSetBit(0); j >= 0; j = references.nextSetBit(j + 1)) {
+            if (!"success".equals(parsed[j].optString("status"))) {
+                return skipped("Step " + index + " depends on failed step " + j);
+            }
+        }
+        JSONObject resolved;
+        try {
+            resolved = new JSONObject()
+                    .put("action", step.getString("action"))
+                    .put("data", resolve(step.opt("data"), parsed));
+            if (step.has("requestId")) {
+                resolved.put("requestId", step.get("requestId"));
+            }
+            String token = step.optString("token", batchToken);
+            if (token != null) {
+                // verified again for this step, so it also fills in and checks the step's email
+                resolved.put("token", token);
+            }
+        } catch (JSONException e) {
+            return skipped("Step " + index + ": " + e.getMessage());
+        }
+        return requestHandler.handleRequest(resolved, session);
+    }
+
+    private static Runnable claimOnce(Runnable task) {
+        AtomicBoolean claimed = new AtomicBoolean(false);
+        return () -> {
+            if (claimed.compareAndSet(false, true)) {
+                task.run();
+            }
+        };
+    }
+
+    private static String skipped(String message) {
+        try (ResponseWriter out = ResponseWriter.begin()) {
+            return out.error(message).string(ResponseWriter.ACTION, "skipped").finish();
+        }
+    }
+
+    private static void collectReferences(Object value, BitSet into) {
+        if (value instanceof String) {
+            Matcher matcher = REFERENCE.matcher((String) value);
+            if (matcher.matches()) {
+                into.set(Integer.parseInt(matcher.group(1)));
+            }
+        } else if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            for (String key : object.keySet()) {
+                collectReferences(object.get(key), into);
+            }
+        } else if (value instanceof JSONArray) {
+            for (Object element : (JSONArray) value) {
+                collectReferences(element, into);
+            }
+        }
+    }
+
+    // Copy of value with every reference replaced by the field it points at.
+    private static Object resolve(Object value, JSONObject[] parsed) {
+        if (value instanceof String) {
+            Matcher matcher = REFERENCE.matcher((String) value);
+            if (!matcher.matches()) {
+                return value;
+            }
+            Object current = parsed[Integer.parseInt(matcher.group(1))];
+            for (String field : matcher.group(2).split("\\.")) {
+                current = current instanceof JSONObject ? ((JSONObject) current).opt(field) : null;
+            }
+            if (current == null) {
+                throw new JSONException("Unresolved reference " + value);
+            }
+            return current;
+        }
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            JSONObject copy = new JSONObject();
+            for (String key : object.keySet()) {
+                copy.put(key, resolve(object.get(key), parsed));
+            }
+            return copy;
+        }
+        if (value instanceof JSONArray) {
+            JSONArray copy = new JSONArray();
+            for (Object element : (JSONArray) value) {
+                copy.put(resolve(element, parsed));
+            }
+            return copy;
+        }
+        return value == null ? new JSONObject() : value;
+    }
+}
@@ -0,0 +1,59 @@
+package com.com.SymWall.handler.action;
+
+import com.com.SymWall.model.User;
+import com.com.SymWall.model.UserManager;
+import com.com.SymWall.server.AccountNotifier;
+import com.com.SymWall.server.SessionTokens;
+import org.json.JSONObject;
+
+public class DeleteAccountAction implements Action<DeleteAccountAction.Request> {
+
+    private final UserManager userManager;
+    private final SessionTokens sessionTokens;
+
+    public DeleteAccountAction(UserManager userManager, SessionTokens sessionTokens) {
+        this.userManager = userManager;
+        this.sessionTokens = sessionTokens;
+    }
+
+    public static final class Request {
+        final String email;
+        final String passwordHash;
+
+        Request(String email, String passwordHash) {
+            this.email = email;
+            this.passwordHash = passwordHash;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "delete_account_request";
+    }
+
+    @Override
+    public String responseName() {
+        return "delete_account_response";
+    }
+
+    @Override
+    public Request decode(JSONObject data) {
+        return new Request(data.getString("email"), data.getString("passwordHash"));
+    }
+
+    @Override
+    public void handle(Request request, ResponseWriter out) {
+        User user = userManager.getUserByEmail(request.email);
+        if (user == null) {
+            out.error("User not found");
+        } else if (!user.getPasswordHash().equals(request.passwordHash)) {
+            out.error("Invalid password");
+        } else if (!userManager.deleteUser(request.email, current -> current.getPasswordHash().equals(request.passwordHash))) {
+            out.error("Failed to delete account");
+        } else {
+            sessionTokens.revoke(request.email);
+            out.success().string(ResponseWriter.MESSAGE, "Account deleted successfully");
+            AccountNotifier.deleted(request.email);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.com.SymWall.handler.action;
+
+import com.com.SymWall.api.CatalogCursor;
+import com.com.SymWall.model.CatalogEntry;
+import com.com.SymWall.repository.MusicRepository;
+import com.com.SymWall.util.Log;
+import org.json.JSONObject;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Keyset-paginated catalog listing; see {@link MusicRepository#findCatalogPage}.
+ */
+public class GetCatalogPageAction implements Action<GetCatalogPageAction.Request> {
+
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int MAX_PAGE_SIZE = 200;
+
+    private static final ResponseWriter.Key ITEMS = ResponseWriter.key("items");
+    private static final ResponseWriter.Key NEXT_CURSOR = ResponseWriter.key("nextCursor");
+    private static final ResponseWriter.Key ID = ResponseWriter.key("id");
+    private static final ResponseWriter.Key NAME = ResponseWriter.key("name");
+    private static final ResponseWriter.Key SINGER = ResponseWriter.key("singer");
+    private static final ResponseWriter.Key DURATION_SECONDS = ResponseWriter.key("duration_seconds");
+    private static final ResponseWriter.Key GENRE = ResponseWriter.key("genre");
+
+    private final MusicRepository musicRepository;
+
+    public GetCatalogPageAction(MusicRepository musicRepository) {
+        this.musicRepository = musicRepository;
+    }
+
+    public static final class Request {
+        final int pageSize;
+        final String singer;
+        final String genre;
+        final String cursor;
+
+        Request(int pageSize, String singer, String genre, String cursor) {
+            this.pageSize = pageSize;
+            this.singer = singer;
+            this.genre = genre;
+            this.cursor = cursor;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "get_catalog_page";
+    }
+
+    @Override
+    public String responseName() {
+        return "get_catalog_page_response";
+    }
+
+    @Override
+    public boolean readOnly() {
+        return true;
+    }
+
+    @Override
+    public Request decode(JSONObject data) {
+        return new Request(
+                Math.max(1, Math.min(data.optInt("pageSize", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE)),
+                data.optString("singer", null),
+                data.optString("genre", null),
+                data.optString("cursor", null));
+    }
+
+    @Override
+    public void handle(Request request, ResponseWriter out) {
+        CatalogCursor cursor;
+        try {
+            cursor = request.cursor != null ? CatalogCursor.decode(request.cursor) : null;
+        } catch (IllegalArgumentException ex) {
+            out.error("Invalid cursor");
+            return;
+        }
+        // یک ردیف اضافه می‌خوانیم تا بفهمیم صفحه بعدی وجود دارد یا نه
+        List<CatalogEntry> rows;
+        try {
+            rows = musicRepository.findCatalogPage(
+                    cursor != null ? cursor.getName() : null,
+                    cursor != null ? cursor.getId() : null,
+                    request.singer, request.genre, request.pageSize + 1);
+        } catch (SQLException ex) {
+            Log.error("catalog", "page_failed", ex);
+            out.error("Catalog unavailable, try again");
+            return;
+        }
+        int count = Math.min(rows.size(), request.pageSize);
+
+        out.success().beginArray(ITEMS);
+        for (int i = 0; i < count; i++) {
+            CatalogEntry entry = rows.get(i);
+            out.beginObject()
+                    .string(ID, entry.getId())
+                    .string(NAME, entry.getName())
+                    .string(SINGER, entry.getSinger())
+                    .number(DURATION_SECONDS, entry.getDurationSeconds())
+                    .string(GENRE, entry.getGenre())
+                    .endObject();
+        }
+        out.endArray();
+        if (rows.size() > request.pageSize) {
+            CatalogEntry last = rows.get(count - 1);
+            out.string(NEXT_CURSOR, new CatalogCursor(last.getName(), last.getId()).encode());
+        } else {
+            out.nullValue(NEXT_CURSOR);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.com.SymWall.handler.action;
+
+import com.com.SymWall.model.User;
+import com.com.SymWall.model.UserManager;
+import com.com.SymWall.server.NonceStore;
+import org.json.JSONObject;
+
+import java.util.UUID;
+
+public class GetNonceAction implements Action<GetNonceAction.Request> {
+
+    private static final ResponseWriter.Key NONCE = ResponseWriter.key("nonce");
+
+    private final UserManager userManager;
+    private final NonceStore loginNonces;
+
+    public GetNonceAction(UserManager userManager, NonceStore loginNonces) {
+        this.userManager = userManager;
+        this.loginNonces = loginNonces;
+    }
+
+    public static final class Request {
+        final String email;
+
+        Request(String email) {
+            this.email = email;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "get_nonce";
+    }
+
+    @Override
+    public String responseName() {
+        return "get_nonce_response";
+    }
+
+    // Only adds a login nonce; that never conflicts with other read-only steps.
+    @Override
+    public boolean readOnly() {
+        return true;
+    }
+
+    @Override
+    public Request decode(JSONObject data) {
+        return new Request(data.getString("email"));
+    }
+
+    @Override
+    public void handle(Request request, ResponseWriter out) {
+        User user = userManager.getUserByEmail(request.email);
+        if (user == null) {
+            out.error("User not found");
+            return;
+        }
+        String nonce = UUID.randomUUID().toString();
+        loginNonces.put(request.email, nonce);
+        out.success().string(NONCE, nonce);
+    }
+}
@@ -0,0 +1,54 @@
+package com.com.SymWall.handler.action;
+
+import com.com.SymWall.model.User;
+import com.com.SymWall.model.UserManager;
+import org.json.JSONObject;
+
+public class GetSaltAction implements Action<GetSaltAction.Request> {
+
+    private static final ResponseWriter.Key SALT = ResponseWriter.key("salt");
+
+    private final UserManager userManager;
+
+    public GetSaltAction(UserManager userManager) {
+        this.userManager = userManager;
+    }
+
+    public static final class Request {
+        final String email;
+
+        Request(String email) {
+            this.email = email;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "get_salt";
+    }
+
+    @Override
+    public String responseName() {
+        return "get_salt_response";
+    }
+
+    @Override
+    public boolean readOnly() {
+        return true;
+    }
+
+    @Override
+    public Request decode(JSONObject data) {
+        return new Request(data.getString("email"));
+    }
+
+    @Override
+    public void handle(Request request, ResponseWriter out) {
+        User user = userManager.getUserByEmail(request.email);
+        if (user == null) {
+            out.error("User not found");
+            return;
+        }
+        out.success().string(SALT, user.getPasswordSalt());
+    }
+}
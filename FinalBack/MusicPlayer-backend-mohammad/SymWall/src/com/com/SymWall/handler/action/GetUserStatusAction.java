@@ -0,0 +1,53 @@
+package com.com.SymWall.handler.action;
+
+import com.com.SymWall.model.User;
+import com.com.SymWall.model.UserManager;
+import org.json.JSONObject;
+
+public class GetUserStatusAction implements Action<GetUserStatusAction.Request> {
+
+    private final UserManager userManager;
+
+    public GetUserStatusAction(UserManager userManager) {
+        this.userManager = userManager;
+    }
+
+    public static final class Request {
+        final String email;
+
+        Request(String email) {
+            this.email = email;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "get_user_status";
+    }
+
+    @Override
+    public String responseName() {
+        return "get_user_status_response";
+    }
+
+    @Override
+    public boolean readOnly() {
+        return true;
+    }
+
+    @Override
+    public Request decode(JSONObject data) {
+        return new Request(data.getString("email"));
+    }
+
+    @Override
+    public void handle(Request request, ResponseWriter out) {
+        User user = userManager.getUserByEmail(request.email);
+        if (user == null) {
+            out.error("User not found");
+            return;
+        }
+        out.success();
+        UserStatusEncoder.write(out, ResponseWriter.DATA, user, UserStatusEncoder.Detail.FULL);
+    }
+}
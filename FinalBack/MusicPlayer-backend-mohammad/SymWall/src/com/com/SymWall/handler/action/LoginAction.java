@@ -0,0 +1,93 @@
+package com.com.SymWall.handler.action;
+
+import com.com.SymWall.model.User;
+import com.com.SymWall.model.UserManager;
+import com.com.SymWall.server.NonceStore;
+import com.com.SymWall.server.PushSession;
+import com.com.SymWall.server.SessionTokens;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Challenge login: the client sends SHA-256(storedHash + nonce), where the nonce came from get_nonce.
+ * Any of the account's outstanding nonces is accepted, and only once. The response carries a session
+ * token that resume_session and the request envelope accept instead of repeating this handshake.
+ */
+public class LoginAction implements Action<LoginAction.Request> {
+
+    private final UserManager userManager;
+    private final NonceStore loginNonces;
+    private final SessionTokens sessionTokens;
+
+    public LoginAction(UserManager userManager, NonceStore loginNonces, SessionTokens sessionTokens) {
+        this.userManager = userManager;
+        this.loginNonces = loginNonces;
+        this.sessionTokens = sessionTokens;
+    }
+
+    public static final class Request {
+        final String email;
+        final String passwordHash;
+
+        Request(String email, String passwordHash) {
+            this.email = email;
+            this.passwordHash = passwordHash;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "login_request";
+    }
+
+    @Override
+    public String responseName() {
+        return "login_response";
+    }
+
+    @Override
+    public Request decode(JSONObject data) {
+        return new Request(data.getString("email"), data.getString("passwordHash"));
+    }
+
+    @Override
+    public void handle(Request request, ResponseWriter out) throws Exception {
+        handle(request, null, out);
+    }
+
+    // A successful login also marks the connection as this account's, for the account push topic.
+    @Override
+    public void handle(Request request, PushSession session, ResponseWriter out) throws Exception {
+        User user = userManager.getUserByEmail(request.email);
+        if (user == null || !loginNonces.hasNonce(request.email)) {
+            out.error("Invalid email, password, or nonce missing");
+            return;
+        }
+        String storedHash = user.getPasswordHash();
+        if (!loginNonces.consume(request.email, nonce -> hashSHA256Base64(storedHash + nonce).equals(request.passwordHash))) {
+            out.error("Invalid email or password");
+            return;
+        }
+        out.success().string(ResponseWriter.MESSAGE, "Login successful");
+        UserStatusEncoder.write(out, ResponseWriter.DATA, user, UserStatusEncoder.Detail.ACCOUNT);
+        ResumeSessionAction.writeToken(out, sessionTokens, request.email);
+        if (session != null) {
+            session.authenticate(request.email);
+        }
+    }
+
+    static String hashSHA256Base64(String input) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hashedBytes = digest.digest(input.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hashedBytes);
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM ships SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.com.SymWall.handler.action;
+
+import org.json.JSONObject;
+
+// Heartbeat: keeps an otherwise idle connection from being reaped.
+public class PingAction implements Action<Void> {
+
+    private static final ResponseWriter.Key SERVER_TIME = ResponseWriter.key("serverTime");
+
+    @Override
+    public String name() {
+        return "ping";
+    }
+
+    @Override
+    public String responseName() {
+        return "pong";
+    }
+
+    @Override
+    public boolean readOnly() {
+        return true;
+    }
+
+    @Override
+    public Void decode(JSONObject data) {
+        return null;
+    }
+
+    @Override
+    public void handle(Void request, ResponseWriter out) {
+        out.success().number(SERVER_TIME, System.currentTimeMillis());
+    }
+}
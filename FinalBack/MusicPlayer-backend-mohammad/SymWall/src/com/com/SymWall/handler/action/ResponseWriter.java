@@ -0,0 +1,233 @@
+package com.com.SymWall.handler.action;
+
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Writes one JSON response object straight into a character buffer that is reused by the thread,
+ * instead of building a {@link JSONObject} tree and serialising it. Field names are {@link Key}s whose
+ * quoted form is prepared once, so a typical response allocates only the final String.
+ * A response may be built while another one is in progress on the same thread (a batch step);
+ * each {@link #begin()} then gets the next writer of the thread's chain.
+ */
+public final class ResponseWriter implements AutoCloseable {
+
+    public static final Key STATUS = key("status");
+    public static final Key MESSAGE = key("message");
+    public static final Key ACTION = key("action");
+    public static final Key DATA = key("data");
+    public static final Key REQUEST_ID = key("requestId");
+
+    // A catalog page can grow the buffer a lot; do not keep more than this around per thread.
+    private static final int MAX_RETAINED_CHARS = 64 * 1024;
+    private static final ThreadLocal<ResponseWriter> CURRENT = ThreadLocal.withInitial(ResponseWriter::new);
+
+    private StringBuilder out = new StringBuilder(512);
+    // first[d] is true until something is written at nesting depth d
+    private boolean[] first = new boolean[8];
+    private int depth;
+    private boolean failed;
+    private boolean inUse;
+    private ResponseWriter next;
+
+    private ResponseWriter() {
+    }
+
+    public static final class Key {
+        private final String prefix;
+
+        private Key(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    public static Key key(String name) {
+        return new Key(JSONObject.quote(name) + ":");
+    }
+
+    /**
+     * A free writer of the calling thread, emptied and with the top-level object opened.
+     * Hand it back with {@link #close()} (finish() alone does not).
+     */
+    public static ResponseWriter begin() {
+        ResponseWriter writer = CURRENT.get();
+        while (writer.inUse) {
+            if (writer.next == null) {
+                writer.next = new ResponseWriter();
+            }
+            writer = writer.next;
+        }
+        writer.inUse = true;
+        if (writer.out.capacity() > MAX_RETAINED_CHARS) {
+            writer.out = new StringBuilder(512);
+        }
+        writer.out.setLength(0);
+        writer.depth = 0;
+        writer.failed = false;
+        writer.out.append('{');
+        writer.first[0] = true;
+        return writer;
+    }
+
+    public ResponseWriter success() {
+        return string(STATUS, "success");
+    }
+
+    public ResponseWriter error(String message) {
+        failed = true;
+        return string(STATUS, "error").string(MESSAGE, message);
+    }
+
+    /**
+     * Whether a finished response reports an error. Every action writes its status first
+     * (via {@link #success()} or {@link #error(String)}), so only the start needs checking.
+     */
+    public static boolean isError(String response) {
+        return response.startsWith("{\"status\":\"error\"");
+    }
+
+    // True once error() was called for this response.
+    public boolean failed() {
+        return failed;
+    }
+
+    public ResponseWriter string(Key key, String value) {
+        name(key);
+        if (value == null) {
+            out.append("null");
+        } else {
+            quote(value);
+        }
+        return this;
+    }
+
+    public ResponseWriter number(Key key, long value) {
+        name(key);
+        out.append(value);
+        return this;
+    }
+
+    public ResponseWriter number(Key key, double value) {
+        name(key);
+        out.append(JSONObject.numberToString(value));
+        return this;
+    }
+
+    public ResponseWriter nullValue(Key key) {
+        name(key);
+        out.append("null");
+        return this;
+    }
+
+    // Any value org.json can write (used for the client's requestId, which may be a string or a number).
+    public ResponseWriter value(Key key, Object value) {
+        name(key);
+        out.append(JSONObject.valueToString(value));
+        return this;
+    }
+
+    // An already encoded JSON value as the next array element.
+    public ResponseWriter rawValue(String json) {
+        comma();
+        out.append(json);
+        return this;
+    }
+
+    public ResponseWriter beginObject(Key key) {
+        name(key);
+        return open('{');
+    }
+
+    // An object element inside an array.
+    public ResponseWriter beginObject() {
+        comma();
+        return open('{');
+    }
+
+    public ResponseWriter endObject() {
+        depth--;
+        out.append('}');
+        return this;
+    }
+
+    public ResponseWriter beginArray(Key key) {
+        name(key);
+        return open('[');
+    }
+
+    public ResponseWriter endArray() {
+        depth--;
+        out.append(']');
+        return this;
+    }
+
+    // Closes the top-level object and returns the response text.
+    public String finish() {
+        out.append('}');
+        return out.toString();
+    }
+
+    // Returns the writer to its thread.
+    @Override
+    public void close() {
+        inUse = false;
+    }
+
+    private ResponseWriter open(char bracket) {
+        out.append(bracket);
+        depth++;
+        if (depth == first.length) {
+            first = Arrays.copyOf(first, depth * 2);
+        }
+        first[depth] = true;
+        return this;
+    }
+
+    private void name(Key key) {
+        comma();
+        out.append(key.prefix);
+    }
+
+    private void comma() {
+        if (first[depth]) {
+            first[depth] = false;
+        } else {
+            out.append(',');
+        }
+    }
+
+    // Same escaping rules as JSONObject.quote, without its intermediate writer.
+    private void quote(String value) {
+        out.append('"');
+        char previous = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                case '\b': out.append("\\b"); break;
+                case '\f': out.append("\\f"); break;
+                case '/':
+                    if (previous == '<') {
+                        out.append('\\');
+                    }
+                    out.append(c);
+                    break;
+                default:
+                    if (c < ' ' || (c >= 0x80 && c < 0xA0) || (c >= 0x2000 && c < 0x2100)) {
+                        out.append("\\u");
+                        String hex = Integer.toHexString(c);
+                        out.append("0000", 0, 4 - hex.length()).append(hex);
+                    } else {
+                        out.append(c);
+                    }
+            }
+            previous = c;
+        }
+        out.append('"');
+    }
+}
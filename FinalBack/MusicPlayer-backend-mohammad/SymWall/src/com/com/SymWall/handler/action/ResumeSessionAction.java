@@ -0,0 +1,76 @@
+package com.com.SymWall.handler.action;
+
+import com.com.SymWall.model.User;
+import com.com.SymWall.model.UserManager;
+import com.com.SymWall.server.PushSession;
+import com.com.SymWall.server.SessionTokens;
+import org.json.JSONObject;
+
+/**
+ * Reconnect with the session token from an earlier login instead of get_salt, get_nonce and
+ * login_request. Answers with the full account status and a fresh token, so an active client keeps
+ * its session without ever logging in again.
+ */
+public class ResumeSessionAction implements Action<ResumeSessionAction.Request> {
+
+    static final ResponseWriter.Key TOKEN = ResponseWriter.key("token");
+    static final ResponseWriter.Key TOKEN_EXPIRES_AT = ResponseWriter.key("tokenExpiresAt");
+
+    private final UserManager userManager;
+    private final SessionTokens sessionTokens;
+
+    public ResumeSessionAction(UserManager userManager, SessionTokens sessionTokens) {
+        this.userManager = userManager;
+        this.sessionTokens = sessionTokens;
+    }
+
+    public static final class Request {
+        final String token;
+
+        Request(String token) {
+            this.token = token;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "resume_session";
+    }
+
+    @Override
+    public String responseName() {
+        return "resume_session_response";
+    }
+
+    @Override
+    public Request decode(JSONObject data) {
+        return new Request(data.getString("token"));
+    }
+
+    @Override
+    public void handle(Request request, ResponseWriter out) {
+        handle(request, null, out);
+    }
+
+    @Override
+    public void handle(Request request, PushSession session, ResponseWriter out) {
+        SessionTokens.Claims claims = sessionTokens.verify(request.token);
+        User user = claims != null ? userManager.getUserByEmail(claims.email) : null;
+        if (user == null) {
+            out.error("Session expired, please log in again");
+            return;
+        }
+        out.success();
+        UserStatusEncoder.write(out, ResponseWriter.DATA, user, UserStatusEncoder.Detail.FULL);
+        writeToken(out, sessionTokens, claims.email);
+        if (session != null) {
+            session.authenticate(claims.email);
+        }
+    }
+
+    static void writeToken(ResponseWriter out, SessionTokens sessionTokens, String email) {
+        long now = System.currentTimeMillis();
+        out.string(TOKEN, sessionTokens.issue(email, now))
+                .number(TOKEN_EXPIRES_AT, now + sessionTokens.ttlMillis());
+    }
+}
@@ -0,0 +1,61 @@
+package com.com.SymWall.handler.action;
+
+import com.com.SymWall.model.User;
+import com.com.SymWall.model.UserManager;
+import org.json.JSONObject;
+
+public class SignupAction implements Action<SignupAction.Request> {
+
+    private final UserManager userManager;
+
+    public SignupAction(UserManager userManager) {
+        this.userManager = userManager;
+    }
+
+    public static final class Request {
+        final String username;
+        final String email;
+        final String passwordHash;
+        final String passwordSalt;
+
+        Request(String username, String email, String passwordHash, String passwordSalt) {
+            this.username = username;
+            this.email = email;
+            this.passwordHash = passwordHash;
+            this.passwordSalt = passwordSalt;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "signup_request";
+    }
+
+    @Override
+    public String responseName() {
+        return "signup_response";
+    }
+
+    @Override
+    public Request decode(JSONObject data) {
+        return new Request(data.getString("username"), data.getString("email"),
+                data.getString("passwordHash"), data.getString("passwordSalt"));
+    }
+
+    @Override
+    public void handle(Request request, ResponseWriter out) {
+        User newUser = new User(request.username, request.email, request.passwordHash, request.passwordSalt);
+        // add checks and inserts atomically, so two signups for one email cannot both succeed
+        UserManager.AddResult result = userManager.add(newUser);
+        if (result == UserManager.AddResult.EXISTS) {
+            out.error("Email already exists");
+            return;
+        }
+        if (result != UserManager.AddResult.ADDED) {
+            out.error("Could not save the account, try again later");
+            return;
+        }
+        out.success().string(ResponseWriter.MESSAGE, "Registration successful");
+        UserStatusEncoder.write(out, ResponseWriter.DATA, newUser, UserStatusEncoder.Detail.IDENTITY);
+    }
+}
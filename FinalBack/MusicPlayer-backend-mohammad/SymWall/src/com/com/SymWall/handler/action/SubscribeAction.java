@@ -0,0 +1,108 @@
+package com.com.SymWall.handler.action;
+
+import com.com.SymWall.server.AccountNotifier;
+import com.com.SymWall.server.PushSession;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * {@code subscribe} and {@code unsubscribe}: {@code {"topics":["catalog","track:<id>","account"]}}.
+ * {@code account} is the account logged in on this connection. Events then arrive on the same
+ * connection as {@code {"event":...,"topic":...}} messages between the normal responses.
+ */
+public class SubscribeAction implements Action<SubscribeAction.Request> {
+
+    private static final Pattern TRACK_TOPIC = Pattern.compile("track:[A-Za-z0-9_-]{1,64}");
+    private static final ResponseWriter.Key TOPICS = ResponseWriter.key("topics");
+
+    private final boolean subscribe;
+
+    public SubscribeAction(boolean subscribe) {
+        this.subscribe = subscribe;
+    }
+
+    public static final class Request {
+        final JSONArray topics;
+
+        Request(JSONArray topics) {
+            this.topics = topics;
+        }
+    }
+
+    @Override
+    public String name() {
+        return subscribe ? "subscribe" : "unsubscribe";
+    }
+
+    @Override
+    public String responseName() {
+        return subscribe ? "subscribe_response" : "unsubscribe_response";
+    }
+
+    // Only touches the caller's own subscriptions.
+    @Override
+    public boolean readOnly() {
+        return true;
+    }
+
+    @Override
+    public Request decode(JSONObject data) {
+        return new Request(data.getJSONArray("topics"));
+    }
+
+    @Override
+    public void handle(Request request, ResponseWriter out) {
+        out.error("Push is not available on this connection");
+    }
+
+    @Override
+    public void handle(Request request, PushSession session, ResponseWriter out) {
+        if (session == null) {
+            handle(request, out);
+            return;
+        }
+        if (request.topics.length() > PushSession.MAX_TOPICS) {
+            out.error("At most " + PushSession.MAX_TOPICS + " topics");
+            return;
+        }
+        // check everything first so a bad topic leaves the subscriptions unchanged
+        String[] resolved = new String[request.topics.length()];
+        for (int i = 0; i < resolved.length; i++) {
+            String topic = request.topics.optString(i, "");
+            if (topic.equals("account")) {
+                if (session.account() == null) {
+                    out.error("Log in on this connection before subscribing to account");
+                    return;
+                }
+                resolved[i] = AccountNotifier.topic(session.account());
+            } else if (topic.equals("catalog") || TRACK_TOPIC.matcher(topic).matches()) {
+                resolved[i] = topic;
+            } else {
+                out.error("Unknown topic: " + topic);
+                return;
+            }
+        }
+
+        if (subscribe && !session.hasRoomFor(Arrays.asList(resolved))) {
+            out.error("Too many topics on this connection");
+            return;
+        }
+
+        for (String topic : resolved) {
+            if (!subscribe) {
+                session.unsubscribe(topic);
+            } else if (!session.subscribe(topic)) {
+                out.error("Too many topics on this connection");
+                return;
+            }
+        }
+        out.success().beginArray(TOPICS);
+        for (int i = 0; i < resolved.length; i++) {
+            out.rawValue(JSONObject.quote(request.topics.optString(i)));
+        }
+        out.endArray();
+    }
+}
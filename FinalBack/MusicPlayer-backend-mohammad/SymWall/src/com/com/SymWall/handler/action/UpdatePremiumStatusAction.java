@@ -0,0 +1,87 @@
+package com.com.SymWall.handler.action;
+
+import com.com.SymWall.model.SubscriptionType;
+import com.com.SymWall.model.User;
+import com.com.SymWall.model.UserManager;
+import com.com.SymWall.server.AccountNotifier;
+import com.com.SymWall.server.SessionTokens;
+import org.json.JSONObject;
+
+import java.time.LocalDateTime;
+
+public class UpdatePremiumStatusAction implements Action<UpdatePremiumStatusAction.Request> {
+
+    private final UserManager userManager;
+    private final SessionTokens sessionTokens;
+
+    public UpdatePremiumStatusAction(UserManager userManager, SessionTokens sessionTokens) {
+        this.userManager = userManager;
+        this.sessionTokens = sessionTokens;
+    }
+
+    public static final class Request {
+        final String email;
+        final String subscriptionType;
+
+        Request(String email, String subscriptionType) {
+            this.email = email;
+            this.subscriptionType = subscriptionType;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "update_premium_status";
+    }
+
+    @Override
+    public String responseName() {
+        return "update_premium_status_response";
+    }
+
+    @Override
+    public Request decode(JSONObject data) {
+        return new Request(data.getString("email"), data.getString("subscriptionType"));
+    }
+
+    @Override
+    public void handle(Request request, ResponseWriter out) {
+        if (userManager.getUserByEmail(request.email) == null) {
+            out.error("User not found");
+            return;
+        }
+        SubscriptionType newPlan;
+        try {
+            newPlan = SubscriptionType.valueOf(request.subscriptionType);
+        } catch (IllegalArgumentException ex) {
+            out.error("Invalid subscription type");
+            return;
+        }
+        LocalDateTime expireAt = null;
+        if (newPlan == SubscriptionType.PREMIUM_1_MONTH) {
+            expireAt = LocalDateTime.now().plusMonths(1);
+        } else if (newPlan == SubscriptionType.PREMIUM_3_MONTHS) {
+            expireAt = LocalDateTime.now().plusMonths(3);
+        } else if (newPlan == SubscriptionType.PREMIUM_12_MONTHS) {
+            expireAt = LocalDateTime.now().plusYears(1);
+        }
+        LocalDateTime newExpireAt = expireAt;
+        boolean[] downgrade = new boolean[1];
+        User user = userManager.update(request.email, current -> {
+            downgrade[0] = newPlan.ordinal() < current.getSubscription().ordinal();
+            current.setSubscription(newPlan);
+            current.setSubscriptionExpireAt(newExpireAt);
+            return current;
+        });
+        if (user != null) {
+            if (downgrade[0]) {
+                // sessions of the better plan must log in again; expiry alone does not revoke, see SessionTokens.revoke
+                sessionTokens.revoke(request.email);
+            }
+            out.success().string(ResponseWriter.MESSAGE, "Subscription updated successfully");
+            AccountNotifier.changed(user);
+        } else {
+            out.error("Failed to update user data");
+        }
+    }
+}
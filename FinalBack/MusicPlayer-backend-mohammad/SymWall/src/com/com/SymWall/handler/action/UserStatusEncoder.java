@@ -0,0 +1,47 @@
+package com.com.SymWall.handler.action;
+
+import com.com.SymWall.model.User;
+
+/**
+ * The user object sent back by signup, login and get_user_status. Each response shows a different
+ * amount of it, chosen with {@link Detail}.
+ */
+public final class UserStatusEncoder {
+
+    public enum Detail {
+        // id, username and email
+        IDENTITY,
+        // plus credit and subscription
+        ACCOUNT,
+        // plus createdAt
+        FULL
+    }
+
+    private static final ResponseWriter.Key ID = ResponseWriter.key("id");
+    private static final ResponseWriter.Key USERNAME = ResponseWriter.key("username");
+    private static final ResponseWriter.Key EMAIL = ResponseWriter.key("email");
+    private static final ResponseWriter.Key CREDIT = ResponseWriter.key("credit");
+    private static final ResponseWriter.Key SUBSCRIPTION = ResponseWriter.key("subscription");
+    private static final ResponseWriter.Key SUBSCRIPTION_EXPIRE_AT = ResponseWriter.key("subscriptionExpireAt");
+    private static final ResponseWriter.Key CREATED_AT = ResponseWriter.key("createdAt");
+
+    private UserStatusEncoder() {
+    }
+
+    // Writes the user as the value of key.
+    public static void write(ResponseWriter out, ResponseWriter.Key key, User user, Detail detail) {
+        out.beginObject(key);
+        out.string(ID, user.getId());
+        out.string(USERNAME, user.getUsername());
+        out.string(EMAIL, user.getEmail());
+        if (detail != Detail.IDENTITY) {
+            out.number(CREDIT, user.getCredit());
+            out.string(SUBSCRIPTION, user.getSubscription().toString());
+            out.string(SUBSCRIPTION_EXPIRE_AT, user.getSubscriptionExpireAt() != null ? user.getSubscriptionExpireAt().toString() : null);
+        }
+        if (detail == Detail.FULL) {
+            out.string(CREATED_AT, user.getCreatedAt().toString());
+        }
+        out.endObject();
+    }
+}
@@ -0,0 +1,24 @@
+package com.com.SymWall.model;
+
+// One row of the musics catalog as shown in the client's list (no file path).
+public class CatalogEntry {
+    private final String id;
+    private final String name;
+    private final String singer;
+    private final int durationSeconds;
+    private final String genre;
+
+    public CatalogEntry(String id, String name, String singer, int durationSeconds, String genre) {
+        this.id = id;
+        this.name = name;
+        this.singer = singer;
+        this.durationSeconds = durationSeconds;
+        this.genre = genre;
+    }
+
+    public String getId() { return id; }
+    public String getName() { return name; }
+    public String getSinger() { return singer; }
+    public int getDurationSeconds() { return durationSeconds; }
+    public String getGenre() { return genre; }
+}
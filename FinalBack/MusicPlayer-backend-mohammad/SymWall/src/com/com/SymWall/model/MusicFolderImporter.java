@@ -1,4 +1,7 @@
 package com.com.SymWall.model;
+
+import com.com.SymWall.api.CatalogCache;
+
 import java.io.File;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -51,6 +54,9 @@ public class MusicFolderImporter {
             boolean saved = saveMusicToDB(songName, singer, duration, genre, filePath);
             System.out.printf("فایل %s %s ذخیره شد.%n", fileName, saved ? "با موفقیت" : "ناموفق");
         }
+
+        // اگر در همان پروسه سرویس کاتالوگ اجرا شود، snapshot دوباره ساخته می‌شود
+        CatalogCache.invalidate();
     }
 
     private static boolean saveMusicToDB(String name, String singer, int duration, String genre, String filePath) {
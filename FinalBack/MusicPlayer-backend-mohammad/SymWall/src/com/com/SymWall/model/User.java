@@ -3,15 +3,15 @@ package com.com.SymWall.model;
 import java.time.LocalDateTime;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.PBEKeySpec;
-import java.security.SecureRandom;
-import java.util.Base64;
-import java.nio.charset.StandardCharsets;
-
+import com.com.SymWall.util.PasswordHasher;
 import org.json.JSONObject;
 
+/**
+ * An account. The instances UserManager hands out are shared between threads and must not be
+ * modified; changes go through {@link UserManager#update}, which works on a {@link #copy()}.
+ */
 public class User {
 
     private String id;
@@ -25,10 +25,6 @@ public class User {
 
     private LocalDateTime subscriptionExpireAt;  // ✅ جدید
 
-    private static final int ITERATIONS = 65536;
-    private static final int KEY_LENGTH = 512;
-    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
-
     public User() {
         // Empty constructor for JSON parsing
     }
@@ -45,23 +41,27 @@ public class User {
         this.subscriptionExpireAt = null; // ✅ پیش‌فرض
     }
 
-    // Password hashing
+    public User copy() {
+        User copy = new User();
+        copy.id = id;
+        copy.username = username;
+        copy.email = email;
+        copy.passwordHash = passwordHash;
+        copy.passwordSalt = passwordSalt;
+        copy.credit = credit;
+        copy.subscription = subscription;
+        copy.createdAt = createdAt;
+        copy.subscriptionExpireAt = subscriptionExpireAt;
+        return copy;
+    }
+
+    // Password hashing (PBKDF2, see PasswordHasher)
     private String hashPassword(String password, String salt) {
-        try {
-            PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt.getBytes(StandardCharsets.UTF_8), ITERATIONS, KEY_LENGTH);
-            SecretKeyFactory factory = SecretKeyFactory.getInstance(ALGORITHM);
-            byte[] hash = factory.generateSecret(spec).getEncoded();
-            return Base64.getEncoder().encodeToString(hash);
-        } catch (Exception e) {
-            throw new RuntimeException("Error while hashing a password", e);
-        }
+        return PasswordHasher.get().hash(password, salt);
     }
 
     private String generateSalt() {
-        SecureRandom random = new SecureRandom();
-        byte[] salt = new byte[64];
-        random.nextBytes(salt);
-        return Base64.getEncoder().encodeToString(salt);
+        return PasswordHasher.get().newSalt();
     }
 
     public boolean checkPassword(String inputPassword) {
@@ -78,6 +78,11 @@ public class User {
         this.passwordHash = hashPassword(newPassword, passwordSalt);
     }
 
+    // Same as checkPassword, hashed on the PasswordHasher pool instead of the calling thread.
+    public CompletableFuture<Boolean> checkPasswordAsync(String inputPassword) {
+        return PasswordHasher.get().verifyAsync(inputPassword, passwordSalt, passwordHash);
+    }
+
     public void addCredit(double amount) {
         if (amount > 0) {
             this.credit += amount;
@@ -102,12 +107,16 @@ public class User {
      * If expired, automatically downgrade to STANDARD
      */
     public void checkAndDowngradeIfExpired() {
-        if (subscriptionExpireAt != null && LocalDateTime.now().isAfter(subscriptionExpireAt)) {
+        if (isSubscriptionExpired()) {
             this.subscription = SubscriptionType.STANDARD;
             this.subscriptionExpireAt = null;
         }
     }
 
+    public boolean isSubscriptionExpired() {
+        return subscriptionExpireAt != null && LocalDateTime.now().isAfter(subscriptionExpireAt);
+    }
+
     // Getters and Setters
     public String getId() { return id; }
     public void setId(String id) {
@@ -0,0 +1,374 @@
+package com.com.SymWall.model;
+
+import com.com.SymWall.util.LatencyHistogram;
+import com.com.SymWall.util.Log;
+import com.com.SymWall.util.Metrics;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Append-only log of user changes, one JSON record per line: {@code signup} and {@code update}
+ * carry the whole user, {@code delete} only the email. Replaying them in order over the last
+ * snapshot gives the current users.
+ * <p>
+ * Writers only enqueue. One thread writes whatever has queued up since its last round and fsyncs
+ * once for the whole batch (group commit), then completes every writer's future, so a change costs
+ * one record plus a share of an fsync no matter how many users there are. A record may carry a callback
+ * that runs on that thread right after the fsync, in journal order, before any writer hears back.
+ * <p>
+ * Once the journal passes {@code compactBytes} it is renamed to {@code users.journal.1} and a new
+ * one is started; the owner then writes a snapshot and calls {@link #compacted()}. Until then a
+ * crash simply replays both files.
+ * <p>
+ * A batch that fails to write is cut off the file again before the next one, so acknowledged
+ * records never follow a torn one. If that is not possible, or an fsync fails (after which the
+ * kernel may already have dropped the dirty pages), the journal is poisoned: every later append
+ * fails, and callers must not count on any record of the failed batch being there or gone.
+ */
+final class UserJournal {
+
+    private static final int MAX_BATCH = 1024;
+    // queued by close(); compared by identity
+    private static final Pending STOP = new Pending(new byte[0], null);
+    private static final LatencyHistogram FSYNC_TIMER = Metrics.timer("users.journal_fsync");
+
+    // How the journal files are opened for appending; replaced by checks that inject I/O failures.
+    interface Opener {
+        FileChannel open(Path file) throws IOException;
+    }
+
+    static final Opener APPEND = file -> FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+
+    private final Path current;
+    private final Path rotated;
+    private final long compactBytes;
+    private final Runnable compactor;
+    private final Opener opener;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private FileChannel channel;
+    // written on the journal thread only
+    private volatile long size;
+    private volatile boolean closed = false;
+    // set once a failed batch could not be undone; see the class comment
+    private volatile IOException poisoned;
+
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+
+    private static final class Pending {
+        final byte[] line;
+        final Runnable onDurable;
+        final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        Pending(byte[] line, Runnable onDurable) {
+            this.line = line;
+            this.onDurable = onDurable;
+        }
+    }
+
+    /**
+     * @param compactor called after a rotation; it must not block, but hand off writing a snapshot
+     *                  of the current users to another thread and then call {@link #compacted()}
+     */
+    UserJournal(Path dataDir, long compactBytes, Runnable compactor) {
+        this(dataDir, compactBytes, compactor, APPEND);
+    }
+
+    UserJournal(Path dataDir, long compactBytes, Runnable compactor, Opener opener) {
+        this.current = dataDir.resolve("users.journal");
+        this.rotated = dataDir.resolve("users.journal.1");
+        this.compactBytes = compactBytes;
+        this.compactor = compactor;
+        this.opener = opener;
+        this.thread = new Thread(this::run, "users-journal");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Applies the rotated journal (if a compaction was cut short) and then the current one.
+     * A record cut off by a crash (no newline after it) can only be the last one and is trimmed
+     * from the file. A complete line that does not parse is logged and skipped; the records after
+     * it are still applied.
+     *
+     * @return number of records applied
+     */
+    int replay(Consumer<JSONObject> apply) throws IOException {
+        int applied = 0;
+        if (Files.exists(rotated)) {
+            applied += replay(rotated, apply);
+        }
+        if (Files.exists(current)) {
+            applied += replay(current, apply);
+        }
+        return applied;
+    }
+
+    private static int replay(Path file, Consumer<JSONObject> apply) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        int applied = 0;
+        int start = 0;
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] != '\n') {
+                continue;
+            }
+            JSONObject record;
+            try {
+                record = new JSONObject(new String(content, start, i - start, StandardCharsets.UTF_8));
+            } catch (JSONException e) {
+                Log.error("users", "journal_record_unreadable", e, "file", file, "offset", start);
+                start = i + 1;
+                continue;
+            }
+            apply.accept(record);
+            applied++;
+            start = i + 1;
+        }
+        if (start < content.length) {
+            // never acknowledged: a batch is only acknowledged once all of it is on disk
+            Log.warn("users", "journal_truncated", "file", file, "bytes", content.length - start);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(start);
+            }
+        }
+        return applied;
+    }
+
+    void start() throws IOException {
+        channel = opener.open(current);
+        size = channel.size();
+        thread.start();
+        if (Files.exists(rotated)) {
+            // a compaction did not finish before the last shutdown
+            compactor.run();
+        }
+    }
+
+    /**
+     * Queues one record. The future completes once it is on disk; callers should not hold locks
+     * while waiting for it, or concurrent writers cannot share the fsync.
+     */
+    CompletableFuture<Void> append(JSONObject record) {
+        return append(record, null);
+    }
+
+    /**
+     * Like {@link #append(JSONObject)}; {@code onDurable} runs on the journal thread once the record is
+     * on disk, after those of all earlier records, and never if it fails. It must be quick.
+     */
+    CompletableFuture<Void> append(JSONObject record, Runnable onDurable) {
+        Pending pending = new Pending((record.toString() + "\n").getBytes(StandardCharsets.UTF_8), onDurable);
+        if (closed) {
+            pending.durable.completeExceptionally(new IOException("Journal is closed"));
+        } else if (poisoned != null) {
+            pending.durable.completeExceptionally(new IOException("Journal failed earlier", poisoned));
+        } else {
+            queue.add(pending);
+        }
+        return pending.durable;
+    }
+
+    static JSONObject signup(User user) {
+        return new JSONObject().put("op", "signup").put("user", user.toJSONObject());
+    }
+
+    static JSONObject update(User user) {
+        return new JSONObject().put("op", "update").put("user", user.toJSONObject());
+    }
+
+    static JSONObject delete(String email) {
+        return new JSONObject().put("op", "delete").put("email", email);
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            stopping = batch.remove(STOP);
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                batch.clear();
+            }
+            if (size >= compactBytes && poisoned == null && !Files.exists(rotated)) {
+                rotate();
+            }
+        }
+    }
+
+    private void writeBatch(List<Pending> batch) {
+        long start = System.nanoTime();
+        if (poisoned != null) {
+            // queued before the failure that poisoned the journal
+            fail(batch, new IOException("Journal failed earlier", poisoned));
+            return;
+        }
+        ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+        long bytes = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(batch.get(i).line);
+            bytes += batch.get(i).line.length;
+        }
+        boolean writing = true;
+        try {
+            long written = 0;
+            while (written < bytes) {
+                written += channel.write(buffers);
+            }
+            writing = false;
+            channel.force(false);
+            size += bytes;
+            records.addAndGet(buffers.length);
+            batches.incrementAndGet();
+            for (Pending pending : batch) {
+                if (pending.onDurable != null) {
+                    try {
+                        pending.onDurable.run();
+                    } catch (RuntimeException e) {
+                        Log.error("users", "journal_callback_failed", e);
+                    }
+                }
+            }
+            for (Pending pending : batch) {
+                pending.durable.complete(null);
+            }
+        } catch (IOException e) {
+            FSYNC_TIMER.error();
+            Log.error("users", "journal_write_failed", e, "records", buffers.length, "fsync", !writing);
+            // after a failed fsync the file's state is unknown, so the journal stops either way
+            if (!undo(e) || !writing) {
+                poison(e);
+            }
+            // only now, so a caller that retries already sees the poisoned journal
+            fail(batch, e);
+        } finally {
+            FSYNC_TIMER.recordSince(start);
+        }
+    }
+
+    // Cuts the file back to the end of the last good batch, so later batches don't follow a torn record.
+    private boolean undo(IOException cause) {
+        try {
+            channel.truncate(size);
+            channel.force(false);
+            return true;
+        } catch (IOException e) {
+            e.addSuppressed(cause);
+            Log.error("users", "journal_undo_failed", e, "file", current, "size", size);
+            return false;
+        }
+    }
+
+    private void poison(IOException cause) {
+        poisoned = cause;
+        Log.error("users", "journal_poisoned", cause, "file", current);
+    }
+
+    private static void fail(List<Pending> batch, IOException e) {
+        for (Pending pending : batch) {
+            pending.durable.completeExceptionally(e);
+        }
+    }
+
+    // Between batches, so every record is either in the rotated file or in the new one.
+    private void rotate() {
+        try {
+            channel.close();
+            Files.move(current, rotated, StandardCopyOption.ATOMIC_MOVE);
+            channel = opener.open(current);
+            size = 0;
+            Log.info("users", "journal_rotated", "file", rotated);
+            compactor.run();
+        } catch (IOException e) {
+            Log.error("users", "journal_rotate_failed", e, "file", current);
+            try {
+                if (!channel.isOpen()) {
+                    channel = opener.open(current);
+                }
+            } catch (IOException reopen) {
+                Log.error("users", "journal_reopen_failed", reopen, "file", current);
+            }
+        }
+    }
+
+    /**
+     * The snapshot taken after the last rotation is on disk; the rotated journal is no longer needed.
+     */
+    void compacted() throws IOException {
+        Files.deleteIfExists(rotated);
+        compactions.incrementAndGet();
+    }
+
+    /**
+     * Stops accepting records, writes the queued ones and closes the file.
+     */
+    void close() {
+        closed = true;
+        queue.add(STOP);
+        try {
+            thread.join(10_000);
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            Log.error("users", "journal_close_failed", e, "file", current);
+        }
+        // appended while closing, after STOP
+        Pending late;
+        while ((late = queue.poll()) != null) {
+            late.durable.completeExceptionally(new IOException("Journal is closed"));
+        }
+    }
+
+    /**
+     * Empties the journal after a snapshot that includes every record has been written.
+     * Only valid after {@link #close()}.
+     */
+    void clear() throws IOException {
+        Files.deleteIfExists(rotated);
+        Files.deleteIfExists(current);
+    }
+
+    long records() {
+        return records.get();
+    }
+
+    long batches() {
+        return batches.get();
+    }
+
+    long compactions() {
+        return compactions.get();
+    }
+
+    long size() {
+        return size;
+    }
+
+    boolean poisoned() {
+        return poisoned != null;
+    }
+}
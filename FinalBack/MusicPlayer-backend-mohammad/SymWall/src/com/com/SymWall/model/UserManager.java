@@ -1,121 +1,550 @@
 package com.com.SymWall.model;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
+import com.com.SymWall.util.LatencyHistogram;
+import com.com.SymWall.util.Log;
+import com.com.SymWall.util.Metrics;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+/**
+ * Users by email. Every change is appended to a {@link UserJournal} and is durable when the call
+ * returns; concurrent changes share one fsync. users.json is only a snapshot: it is rewritten in the
+ * background when the journal has grown past {@code symwall.users.journalCompactBytes}, and on a
+ * clean shutdown. Startup loads the snapshot and replays the journal over it.
+ * <p>
+ * Stored users are never modified in place: {@link #update} hands a copy to the caller's function
+ * and swaps the result in, so readers get a consistent snapshot without locking. Writers lock one
+ * of {@value #STRIPES} stripes chosen by email, so changes to different users rarely wait for each
+ * other, while changes to one user are applied and journaled in order. A change whose journal record
+ * fails is taken back out of the map (unless a later change to that user already replaced it), so the
+ * store never keeps a change its caller was told had failed. Snapshots are written from a second map
+ * that the journal thread updates as records become durable, so they never hold a change that is
+ * still in flight either.
+ * <p>
+ * Secondary indexes by id, by case-insensitive username and by subscription map to emails and are
+ * changed under the same stripe lock as the primary map. A lock-free reader can still catch an
+ * index between two steps, so lookups re-check each hit against the user they resolve to.
+ */
 public class UserManager {
 
+    static final int STRIPES = 256;
+
     private final Map<String, User> usersByEmail;
-    private static final String DATA_DIR = "C:\\Me\\Code\\JAVA\\Main\\SymWall\\data";
-    private static final String USERS_FILE = DATA_DIR + "\\users.json";
+    // only what the journal has made durable, changed on its thread in record order; snapshots read this
+    private final Map<String, User> committed = new ConcurrentHashMap<>();
+    private final Map<String, String> emailById = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> emailsByUsername = new ConcurrentHashMap<>();
+    private final Map<SubscriptionType, Set<String>> emailsBySubscription = new EnumMap<>(SubscriptionType.class);
+    // ReentrantLock instead of synchronized so virtual threads waiting here don't pin their carrier
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    public static final String DATA_DIR = "C:\\Me\\Code\\JAVA\\Main\\SymWall\\data";
+    private static final long JOURNAL_COMPACT_BYTES = Long.getLong("symwall.users.journalCompactBytes", 8L * 1024 * 1024);
+    private static final LatencyHistogram LOAD_TIMER = Metrics.timer("users.load");
+    private static final LatencyHistogram SAVE_TIMER = Metrics.timer("users.save");
+
+    private final String dataDir;
+    private final Path usersFile;
+    private final UserJournal journal;
+    // snapshots are written here, off the journal thread
+    private final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "users-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private final Thread shutdownHook = new Thread(this::shutdown, "users-shutdown");
+    private volatile long lastRecoveryNanos;
+
+    public enum AddResult {
+        ADDED,
+        EXISTS,
+        // the journal could not store it; the user was not added
+        NOT_SAVED
+    }
 
     public UserManager() {
-        usersByEmail = new HashMap<>();
+        this(DATA_DIR);
+    }
+
+    public UserManager(String dataDir) {
+        this(dataDir, UserJournal.APPEND);
+    }
+
+    // The opener lets checks inject journal I/O failures.
+    UserManager(String dataDir, UserJournal.Opener journalOpener) {
+        this.dataDir = dataDir;
+        this.usersFile = Path.of(dataDir, "users.json");
+        this.journal = new UserJournal(Path.of(dataDir), JOURNAL_COMPACT_BYTES, () -> snapshotWriter.execute(this::compact),
+                journalOpener);
+        usersByEmail = new ConcurrentHashMap<>();
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        // filled once here and only read afterwards, so the EnumMap itself needs no locking
+        for (SubscriptionType type : SubscriptionType.values()) {
+            emailsBySubscription.put(type, ConcurrentHashMap.newKeySet());
+        }
         initialize();
         loadUsers();
+        try {
+            journal.start();
+        } catch (IOException e) {
+            Log.error("users", "journal_open_failed", e, "dir", dataDir);
+            throw new IllegalStateException("Cannot open the user journal in " + dataDir, e);
+        }
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
     }
 
     private void initialize() {
-        File directory = new File(DATA_DIR);
+        File directory = new File(dataDir);
         if (!directory.exists()) {
             boolean created = directory.mkdirs();
             if (!created) {
-                System.err.println("Failed to create data directory: " + DATA_DIR);
+                System.err.println("Failed to create data directory: " + dataDir);
             }
         }
     }
 
     private void loadUsers() {
-        File file = new File(USERS_FILE);
-        if (!file.exists()) {
-            System.out.println("Users file does not exist yet");
-            return;
+        long start = System.nanoTime();
+        try {
+            if (Files.exists(usersFile)) {
+                // streamed and parsed in parallel; never rewritten at load
+                new UsersFileLoader(ForkJoinPool.commonPool()).load(usersFile, user -> reindex(usersByEmail.put(user.getEmail(), user), user));
+            } else {
+                System.out.println("Users file does not exist yet");
+            }
+            int replayed = journal.replay(this::apply);
+            committed.putAll(usersByEmail);
+            lastRecoveryNanos = System.nanoTime() - start;
+            Log.info("users", "recovered", "users", usersByEmail.size(), "journalRecords", replayed,
+                    "ms", lastRecoveryNanos / 1_000_000);
+
+        } catch (IOException | RuntimeException e) {
+            // starting with part of the users would let the next snapshot overwrite the rest
+            LOAD_TIMER.error();
+            Log.error("users", "load_failed", e, "dir", dataDir);
+            throw new IllegalStateException("Cannot load the users in " + dataDir, e);
+        } finally {
+            LOAD_TIMER.recordSince(start);
+        }
+    }
+
+    // One journal record during recovery.
+    private void apply(JSONObject record) {
+        String op = record.optString("op");
+        try {
+            switch (op) {
+                case "signup":
+                case "update":
+                    User user = User.fromJSONObject(record.getJSONObject("user"));
+                    user.checkAndDowngradeIfExpired();
+                    reindex(usersByEmail.put(user.getEmail(), user), user);
+                    break;
+                case "delete":
+                    reindex(usersByEmail.remove(record.getString("email")), null);
+                    break;
+                default:
+                    Log.warn("users", "journal_unknown_op", "op", op);
+            }
+        } catch (RuntimeException e) {
+            Log.error("users", "journal_record_skipped", e, "op", op);
         }
+    }
 
+    // Waits outside the store lock, so changes from other threads join the same fsync.
+    private static boolean awaitDurable(CompletableFuture<Void> durable) {
         try {
-            String content = new String(java.nio.file.Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
-            JSONArray jsonArray = new JSONArray(content);
+            durable.join();
+            return true;
+        } catch (CompletionException e) {
+            // the journal already logged why
+            return false;
+        }
+    }
 
-            for (int i = 0; i < jsonArray.length(); i++) {
-                JSONObject userJson = jsonArray.getJSONObject(i);
-                User user = User.fromJSONObject(userJson);
-                user.checkAndDowngradeIfExpired();
-                usersByEmail.put(user.getEmail(), user);
+    // After a journal rotation: once this snapshot is on disk the rotated journal can go.
+    private void compact() {
+        snapshotLock.lock();
+        try {
+            if (saveUsers()) {
+                journal.compacted();
             }
-            saveUsers(); // فقط یک بار بعد از بارگذاری
+        } catch (IOException e) {
+            Log.error("users", "compaction_failed", e, "dir", dataDir);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
 
+    // Clean shutdown: write everything into users.json so the next start has nothing to replay.
+    private void shutdown() {
+        journal.close();
+        snapshotLock.lock();
+        try {
+            if (journal.records() > 0 || journal.size() > 0) {
+                if (saveUsers()) {
+                    journal.clear();
+                }
+            }
         } catch (IOException e) {
-            System.err.println("Error loading users: " + e.getMessage());
-            e.printStackTrace();
-        } catch (Exception e) {
-            System.err.println("Error parsing users JSON: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("users", "journal_clear_failed", e, "dir", dataDir);
+        } finally {
+            snapshotLock.unlock();
         }
     }
 
-    private void saveUsers() {
+    // Writes a snapshot as a journal rotation would, for the checks.
+    void compactNow() {
+        compact();
+    }
+
+    // Stops the journal and any compaction without a final snapshot, leaving the files as a crash
+    // after the last acknowledged change would. Used by the checks and benchmarks under test/.
+    void halt() throws InterruptedException {
+        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        journal.close();
+        snapshotWriter.shutdown();
+        snapshotWriter.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    private boolean saveUsers() {
+        long start = System.nanoTime();
+        // the journal applies a batch here before it can rotate, so this includes all rotated records
         JSONArray jsonArray = new JSONArray();
-        for (User user : usersByEmail.values()) {
+        for (User user : committed.values()) {
             jsonArray.put(user.toJSONObject());
         }
 
-        try (FileWriter writer = new FileWriter(USERS_FILE, StandardCharsets.UTF_8)) {
-            writer.write(jsonArray.toString(2));
+        Path temp = Path.of(usersFile + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(jsonArray.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
         } catch (IOException e) {
-            System.err.println("Error saving users: " + e.getMessage());
-            e.printStackTrace();
+            SAVE_TIMER.error();
+            SAVE_TIMER.recordSince(start);
+            Log.error("users", "save_failed", e, "file", temp);
+            return false;
         }
+        try {
+            Files.move(temp, usersFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Log.info("users", "snapshot_saved", "users", jsonArray.length(), "ms", (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } catch (IOException e) {
+            SAVE_TIMER.error();
+            Log.error("users", "save_failed", e, "file", usersFile);
+            return false;
+        } finally {
+            SAVE_TIMER.recordSince(start);
+        }
+    }
+
+    public long journalRecords() {
+        return journal.records();
+    }
+
+    public long journalFsyncs() {
+        return journal.batches();
+    }
+
+    public long journalBytes() {
+        return journal.size();
+    }
+
+    public long compactions() {
+        return journal.compactions();
     }
 
+    // True once the journal refuses writes after a failure it could not undo; see UserJournal.
+    public boolean journalPoisoned() {
+        return journal.poisoned();
+    }
+
+    public long lastRecoveryNanos() {
+        return lastRecoveryNanos;
+    }
+
+    // Moves the user's index entries from old to now; either may be null. Callers hold the stripe.
+    private void reindex(User old, User now) {
+        String email = now != null ? now.getEmail() : old != null ? old.getEmail() : null;
+        if (email == null) {
+            return;
+        }
+        if (old != null) {
+            if (old.getId() != null && (now == null || !old.getId().equals(now.getId()))) {
+                emailById.remove(old.getId(), email);
+            }
+            String oldName = normalize(old.getUsername());
+            if (oldName != null && (now == null || !oldName.equals(normalize(now.getUsername())))) {
+                emailsByUsername.computeIfPresent(oldName, (name, emails) -> {
+                    emails.remove(email);
+                    return emails.isEmpty() ? null : emails;
+                });
+            }
+            if (now == null || old.getSubscription() != now.getSubscription()) {
+                emailsBySubscription.get(old.getSubscription()).remove(email);
+            }
+        }
+        if (now != null) {
+            if (now.getId() != null) {
+                emailById.put(now.getId(), email);
+            }
+            String name = normalize(now.getUsername());
+            if (name != null) {
+                // added inside compute so a concurrent removal of the last entry cannot drop the set under us
+                emailsByUsername.compute(name, (n, emails) -> {
+                    Set<String> set = emails != null ? emails : ConcurrentHashMap.newKeySet();
+                    set.add(email);
+                    return set;
+                });
+            }
+            emailsBySubscription.get(now.getSubscription()).add(email);
+        }
+    }
+
+    private static String normalize(String username) {
+        return username != null ? username.trim().toLowerCase(Locale.ROOT) : null;
+    }
+
+    private ReentrantLock stripe(String email) {
+        int h = email.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    /**
+     * @return a shared snapshot of the user, not to be modified; see {@link #update}
+     */
     public User getUserByEmail(String email) {
         if (email == null) return null;
         User user = usersByEmail.get(email);
-        if (user != null) {
-            user.checkAndDowngradeIfExpired();
-            // حذف saveUsers از اینجا برای جلوگیری از کندی و باگ
+        if (user != null && user.isSubscriptionExpired()) {
+            // persist the downgrade instead of changing the shared instance
+            User downgraded = update(email, expired -> {
+                expired.checkAndDowngradeIfExpired();
+                return expired;
+            });
+            return downgraded != null ? downgraded : usersByEmail.get(email);
         }
         return user;
     }
 
     public boolean addUser(User user) {
+        return add(user) == AddResult.ADDED;
+    }
+
+    /**
+     * Like {@link #addUser}, but tells an existing email apart from a failure to store the user.
+     */
+    public AddResult add(User user) {
         if (user == null || user.getEmail() == null) {
-            return false;
+            return AddResult.NOT_SAVED;
         }
-        if (usersByEmail.containsKey(user.getEmail())) {
-            return false;
+        User stored = user.copy();
+        String email = stored.getEmail();
+        CompletableFuture<Void> durable;
+        ReentrantLock stripe = stripe(email);
+        stripe.lock();
+        try {
+            if (usersByEmail.putIfAbsent(email, stored) != null) {
+                return AddResult.EXISTS;
+            }
+            reindex(null, stored);
+            durable = journal.append(UserJournal.signup(stored), () -> committed.put(email, stored));
+        } finally {
+            stripe.unlock();
+        }
+        if (awaitDurable(durable)) {
+            return AddResult.ADDED;
+        }
+        undo(email, stored, null);
+        return AddResult.NOT_SAVED;
+    }
+
+    // Takes back a change whose journal record failed: puts {@code before} (null: no user) back
+    // if the map still holds {@code after} (null: no user), i.e. nothing was written on top of it.
+    private void undo(String email, User after, User before) {
+        ReentrantLock stripe = stripe(email);
+        stripe.lock();
+        try {
+            if (usersByEmail.get(email) != after) {
+                return;
+            }
+            if (before != null) {
+                usersByEmail.put(email, before);
+            } else {
+                usersByEmail.remove(email);
+            }
+            reindex(after, before);
+            Log.warn("users", "change_undone", "email", email);
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Atomically changes one user: {@code change} gets a private copy of the current user, modifies
+     * it and returns it (or null to leave the user as it is). Runs while holding the user's stripe,
+     * so it must be quick and must not call back into this manager.
+     *
+     * @return the user now stored, or null when there is no such user or the change could not be
+     *         made durable
+     */
+    public User update(String email, UnaryOperator<User> change) {
+        if (email == null) {
+            return null;
         }
-        usersByEmail.put(user.getEmail(), user);
-        saveUsers();
-        return true;
+        User current;
+        User updated;
+        CompletableFuture<Void> durable;
+        ReentrantLock stripe = stripe(email);
+        stripe.lock();
+        try {
+            current = usersByEmail.get(email);
+            if (current == null) {
+                return null;
+            }
+            updated = change.apply(current.copy());
+            if (updated == null) {
+                return current;
+            }
+            if (!email.equals(updated.getEmail())) {
+                throw new IllegalArgumentException("update cannot change the email of " + email);
+            }
+            updated.checkAndDowngradeIfExpired();
+            usersByEmail.put(email, updated);
+            reindex(current, updated);
+            User durableState = updated;
+            durable = journal.append(UserJournal.update(updated), () -> committed.put(email, durableState));
+        } finally {
+            stripe.unlock();
+        }
+        if (awaitDurable(durable)) {
+            return updated;
+        }
+        undo(email, updated, current);
+        return null;
     }
 
+    /**
+     * Replaces the stored user with a copy of {@code user}. Prefer {@link #update}, which cannot
+     * overwrite a concurrent change.
+     */
     public boolean updateUser(User user) {
         if (user == null || user.getEmail() == null) {
             return false;
         }
-        if (!usersByEmail.containsKey(user.getEmail())) {
-            return false;
-        }
-        user.checkAndDowngradeIfExpired();
-        usersByEmail.put(user.getEmail(), user);
-        saveUsers();
-        return true;
+        return update(user.getEmail(), current -> user.copy()) != null;
     }
 
     public boolean deleteUser(String email) {
-        if (email == null || !usersByEmail.containsKey(email)) {
+        return deleteUser(email, user -> true);
+    }
+
+    /**
+     * Deletes the user only if {@code condition} holds for the stored user, checked atomically with
+     * the removal (e.g. that the password presented is still the current one).
+     */
+    public boolean deleteUser(String email, Predicate<User> condition) {
+        if (email == null) {
             return false;
         }
-        usersByEmail.remove(email);
-        saveUsers();
-        return true;
+        User current;
+        CompletableFuture<Void> durable;
+        ReentrantLock stripe = stripe(email);
+        stripe.lock();
+        try {
+            current = usersByEmail.get(email);
+            if (current == null || !condition.test(current)) {
+                return false;
+            }
+            usersByEmail.remove(email);
+            reindex(current, null);
+            durable = journal.append(UserJournal.delete(email), () -> committed.remove(email));
+        } finally {
+            stripe.unlock();
+        }
+        if (awaitDurable(durable)) {
+            return true;
+        }
+        undo(email, null, current);
+        return false;
+    }
+
+    public int size() {
+        return usersByEmail.size();
+    }
+
+    public User getUserById(String id) {
+        String email = id != null ? emailById.get(id) : null;
+        User user = email != null ? getUserByEmail(email) : null;
+        return user != null && id.equals(user.getId()) ? user : null;
+    }
+
+    /**
+     * Users whose name matches ignoring case and surrounding spaces; names are not unique.
+     */
+    public List<User> findByUsername(String username) {
+        String name = normalize(username);
+        Set<String> emails = name != null ? emailsByUsername.get(name) : null;
+        List<User> users = new ArrayList<>();
+        if (emails != null) {
+            for (String email : emails) {
+                User user = usersByEmail.get(email);
+                if (user != null && name.equals(normalize(user.getUsername()))) {
+                    users.add(user);
+                }
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Users currently on {@code type}. Expired plans found on the way are downgraded (and left out).
+     */
+    public List<User> findBySubscription(SubscriptionType type) {
+        List<User> users = new ArrayList<>();
+        for (String email : emailsBySubscription.get(type)) {
+            User user = getUserByEmail(email);
+            if (user != null && user.getSubscription() == type) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    // Index size; may still count plans that expired but were not downgraded yet.
+    public int countBySubscription(SubscriptionType type) {
+        return emailsBySubscription.get(type).size();
     }
 }
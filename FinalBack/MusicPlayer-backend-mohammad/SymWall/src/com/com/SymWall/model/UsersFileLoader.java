@@ -0,0 +1,181 @@
+package com.com.SymWall.model;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+/**
+ * Loads a users.json snapshot without holding the whole file or a whole JSONArray in memory.
+ * The file is scanned as a character stream and cut into the text of its top-level objects; every
+ * {@value #CHUNK_USERS} objects form a chunk that a fork-join pool turns into {@link User}s while
+ * the scanner reads on. Only a few chunks are in flight at a time, and they are handed to the
+ * consumer in file order on the calling thread.
+ */
+final class UsersFileLoader {
+
+    static final int CHUNK_USERS = 2048;
+    private static final int SPLIT_THRESHOLD = 256;
+    private static final int READ_BUFFER_CHARS = 64 * 1024;
+
+    private final ForkJoinPool pool;
+    private final int maxInFlight;
+
+    UsersFileLoader(ForkJoinPool pool) {
+        this.pool = pool;
+        this.maxInFlight = Math.max(2, pool.getParallelism() * 2);
+    }
+
+    /**
+     * @return number of users passed to {@code sink}
+     */
+    int load(Path file, Consumer<User> sink) throws IOException {
+        ArrayDeque<ForkJoinTask<User[]>> inFlight = new ArrayDeque<>();
+        int[] loaded = {0};
+        Consumer<List<String>> submit = chunk -> {
+            if (inFlight.size() >= maxInFlight) {
+                loaded[0] += drain(inFlight.poll(), sink);
+            }
+            inFlight.add(pool.submit(new ParseTask(chunk, 0, chunk.size())));
+        };
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            scan(reader, submit);
+        }
+        while (!inFlight.isEmpty()) {
+            loaded[0] += drain(inFlight.poll(), sink);
+        }
+        return loaded[0];
+    }
+
+    private static int drain(ForkJoinTask<User[]> task, Consumer<User> sink) {
+        User[] users = task.join();
+        for (User user : users) {
+            sink.accept(user);
+        }
+        return users.length;
+    }
+
+    // Cuts the top-level array into the source text of its objects, CHUNK_USERS at a time.
+    private static void scan(Reader reader, Consumer<List<String>> submit) throws IOException {
+        char[] buffer = new char[READ_BUFFER_CHARS];
+        StringBuilder element = new StringBuilder(512);
+        List<String> chunk = new ArrayList<>(CHUNK_USERS);
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        boolean sawArray = false;
+        int read;
+        while ((read = reader.read(buffer)) >= 0) {
+            int elementStart = depth >= 2 ? 0 : -1;
+            for (int i = 0; i < read; i++) {
+                char c = buffer[i];
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                    continue;
+                }
+                switch (c) {
+                    case '"':
+                        inString = true;
+                        break;
+                    case '[':
+                    case '{':
+                        if (depth == 0) {
+                            if (c != '[') {
+                                throw new IOException("users file must hold a JSON array");
+                            }
+                            sawArray = true;
+                        } else if (depth == 1) {
+                            if (c != '{') {
+                                throw new IOException("users file must hold JSON objects");
+                            }
+                            elementStart = i;
+                        }
+                        depth++;
+                        break;
+                    case ']':
+                    case '}':
+                        depth--;
+                        if (depth == 1) {
+                            element.append(buffer, elementStart, i + 1 - elementStart);
+                            chunk.add(element.toString());
+                            element.setLength(0);
+                            elementStart = -1;
+                            if (chunk.size() == CHUNK_USERS) {
+                                submit.accept(chunk);
+                                chunk = new ArrayList<>(CHUNK_USERS);
+                            }
+                        } else if (depth < 0) {
+                            throw new IOException("unbalanced users file");
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (elementStart >= 0) {
+                // the object continues in the next buffer
+                element.append(buffer, elementStart, read - elementStart);
+            }
+        }
+        if (!sawArray || depth != 0 || inString) {
+            throw new IOException("users file is truncated");
+        }
+        if (!chunk.isEmpty()) {
+            submit.accept(chunk);
+        }
+    }
+
+    private static final class ParseTask extends RecursiveTask<User[]> {
+        private static final long serialVersionUID = 1L;
+
+        // ForkJoinTask is Serializable, but these tasks only ever live inside one load
+        @SuppressWarnings("serial")
+        private final List<String> chunk;
+        private final int from;
+        private final int to;
+
+        ParseTask(List<String> chunk, int from, int to) {
+            this.chunk = chunk;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected User[] compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                User[] users = new User[to - from];
+                for (int i = from; i < to; i++) {
+                    User user = User.fromJSONObject(new JSONObject(chunk.get(i)));
+                    user.checkAndDowngradeIfExpired();
+                    users[i - from] = user;
+                }
+                return users;
+            }
+            int middle = (from + to) >>> 1;
+            ParseTask left = new ParseTask(chunk, from, middle);
+            left.fork();
+            User[] right = new ParseTask(chunk, middle, to).compute();
+            User[] first = left.join();
+            User[] users = new User[first.length + right.length];
+            System.arraycopy(first, 0, users, 0, first.length);
+            System.arraycopy(right, 0, users, first.length, right.length);
+            return users;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.com.SymWall.repository;
 
+import com.com.SymWall.model.CatalogEntry;
 import com.com.SymWall.model.Music;
 import com.com.SymWall.util.DB;
+import com.com.SymWall.util.LatencyHistogram;
+import com.com.SymWall.util.Metrics;
 
 import java.sql.*;
 import java.time.Duration;
@@ -10,7 +13,16 @@ import java.util.List;
 
 public class MusicRepository {
 
+    private static final LatencyHistogram SAVE_TIMER = Metrics.timer("db.music.save");
+    private static final LatencyHistogram UPDATE_TIMER = Metrics.timer("db.music.update");
+    private static final LatencyHistogram FIND_BY_ID_TIMER = Metrics.timer("db.music.findById");
+    private static final LatencyHistogram FIND_ALL_TIMER = Metrics.timer("db.music.findAll");
+    private static final LatencyHistogram DELETE_BY_ID_TIMER = Metrics.timer("db.music.deleteById");
+    private static final LatencyHistogram FIND_CATALOG_PAGE_TIMER = Metrics.timer("db.music.findCatalogPage");
+    private static final LatencyHistogram FIND_FILE_PATH_TIMER = Metrics.timer("db.music.findFilePath");
+
     public boolean save(Music music) {
+        long start = System.nanoTime();
         String sql = "INSERT INTO music (id, name, singer, duration, filePath) VALUES (?, ?, ?, ?, ?)";
         try (Connection conn = DB.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -24,12 +36,16 @@ public class MusicRepository {
             return stmt.executeUpdate() > 0;
 
         } catch (SQLException e) {
+            SAVE_TIMER.error();
             e.printStackTrace();
             return false;
+        } finally {
+            SAVE_TIMER.recordSince(start);
         }
     }
 
     public boolean update(Music music) {
+        long start = System.nanoTime();
         String sql = "UPDATE music SET name = ?, singer = ?, duration = ?, filePath = ?, likes = ? WHERE id = ?";
         try (Connection conn = DB.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -44,13 +60,17 @@ public class MusicRepository {
             return stmt.executeUpdate() > 0;
 
         } catch (SQLException e) {
+            UPDATE_TIMER.error();
             e.printStackTrace();
             return false;
+        } finally {
+            UPDATE_TIMER.recordSince(start);
         }
     }
 
 
     public Music findById(String id) {
+        long start = System.nanoTime();
         String sql = "SELECT * FROM music WHERE id = ?";
         try (Connection conn = DB.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -69,12 +89,16 @@ public class MusicRepository {
             }
 
         } catch (SQLException e) {
+            FIND_BY_ID_TIMER.error();
             e.printStackTrace();
+        } finally {
+            FIND_BY_ID_TIMER.recordSince(start);
         }
         return null;
     }
 
     public List<Music> findAll() {
+        long start = System.nanoTime();
         String sql = "SELECT * FROM music";
         List<Music> musics = new ArrayList<>();
 
@@ -93,12 +117,16 @@ public class MusicRepository {
             }
 
         } catch (SQLException e) {
+            FIND_ALL_TIMER.error();
             e.printStackTrace();
+        } finally {
+            FIND_ALL_TIMER.recordSince(start);
         }
         return musics;
     }
 
     public boolean deleteById(String id) {
+        long start = System.nanoTime();
         String sql = "DELETE FROM music WHERE id = ?";
         try (Connection conn = DB.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -108,8 +136,89 @@ public class MusicRepository {
             return stmt.executeUpdate() > 0;
 
         } catch (SQLException e) {
+            DELETE_BY_ID_TIMER.error();
             e.printStackTrace();
             return false;
+        } finally {
+            DELETE_BY_ID_TIMER.recordSince(start);
+        }
+    }
+
+    /**
+     * One page of the musics catalog ordered by (name, id), starting after the given key.
+     * Only the list columns are selected. Expected indexes: (name, id), (singer, name, id), (genre, name, id).
+     *
+     * @param afterName name of the last row of the previous page, or null for the first page
+     * @param singer    optional exact singer filter
+     * @param genre     optional exact genre filter
+     * @throws SQLException when the page cannot be read, so callers don't mistake an outage for the end of the catalog
+     */
+    public List<CatalogEntry> findCatalogPage(String afterName, String afterId, String singer, String genre, int limit) throws SQLException {
+        long start = System.nanoTime();
+        StringBuilder sql = new StringBuilder("SELECT id, name, singer, duration_seconds, genre FROM musics WHERE 1 = 1");
+        if (singer != null) sql.append(" AND singer = ?");
+        if (genre != null) sql.append(" AND genre = ?");
+        if (afterName != null) sql.append(" AND (name, id) > (?, ?)");
+        sql.append(" ORDER BY name, id LIMIT ?");
+
+        List<CatalogEntry> page = new ArrayList<>();
+        try (Connection conn = DB.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+
+            int index = 1;
+            if (singer != null) stmt.setString(index++, singer);
+            if (genre != null) stmt.setString(index++, genre);
+            if (afterName != null) {
+                stmt.setString(index++, afterName);
+                stmt.setString(index++, afterId);
+            }
+            stmt.setInt(index, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    page.add(new CatalogEntry(
+                            rs.getString("id"),
+                            rs.getString("name"),
+                            rs.getString("singer"),
+                            rs.getInt("duration_seconds"),
+                            rs.getString("genre")
+                    ));
+                }
+            }
+
+        } catch (SQLException e) {
+            FIND_CATALOG_PAGE_TIMER.error();
+            throw e;
+        } finally {
+            FIND_CATALOG_PAGE_TIMER.recordSince(start);
         }
+        return page;
+    }
+
+    /**
+     * Path of the audio file behind a catalog track, or null if the id is unknown.
+     *
+     * @throws SQLException when the row cannot be read, so an outage is not answered as "track not found"
+     */
+    public String findFilePath(String trackId) throws SQLException {
+        long start = System.nanoTime();
+        String sql = "SELECT file_path FROM musics WHERE id = ?";
+        try (Connection conn = DB.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, trackId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getString("file_path");
+                }
+            }
+
+        } catch (SQLException e) {
+            FIND_FILE_PATH_TIMER.error();
+            throw e;
+        } finally {
+            FIND_FILE_PATH_TIMER.recordSince(start);
+        }
+        return null;
     }
 }
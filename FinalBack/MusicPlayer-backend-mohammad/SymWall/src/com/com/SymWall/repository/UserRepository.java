@@ -1,7 +1,10 @@
 package com.com.SymWall.repository;
 
+import com.com.SymWall.model.SubscriptionType;
 import com.com.SymWall.model.User;
 import com.com.SymWall.util.DB;
+import com.com.SymWall.util.LatencyHistogram;
+import com.com.SymWall.util.Metrics;
 
 import java.sql.*;
 import java.util.ArrayList;
@@ -9,7 +12,15 @@ import java.util.List;
 
 public class UserRepository {
 
+    private static final LatencyHistogram SAVE_TIMER = Metrics.timer("db.users.save");
+    private static final LatencyHistogram UPDATE_TIMER = Metrics.timer("db.users.update");
+    private static final LatencyHistogram FIND_BY_EMAIL_TIMER = Metrics.timer("db.users.findByEmail");
+    private static final LatencyHistogram FIND_ALL_TIMER = Metrics.timer("db.users.findAll");
+    private static final LatencyHistogram UPDATE_CREDIT_TIMER = Metrics.timer("db.users.updateCredit");
+    private static final LatencyHistogram DELETE_BY_ID_TIMER = Metrics.timer("db.users.deleteById");
+
     public boolean save(User user) {
+        long start = System.nanoTime();
         String sql = "INSERT INTO users (id, username, email, passwordHash, passwordSalt, credit, subscription, createdAt) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
         try (Connection conn = DB.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -26,12 +37,16 @@ public class UserRepository {
             return stmt.executeUpdate() > 0;
 
         } catch (SQLException e) {
+            SAVE_TIMER.error();
             e.printStackTrace();
             return false;
+        } finally {
+            SAVE_TIMER.recordSince(start);
         }
     }
 
     public boolean update(User user) {
+        long start = System.nanoTime();
         String sql = "UPDATE users SET username = ?, email = ?, passwordHash = ?, passwordSalt = ?, credit = ?, subscription = ? WHERE id = ?";
         try (Connection conn = DB.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -47,13 +62,17 @@ public class UserRepository {
             return stmt.executeUpdate() > 0;
 
         } catch (SQLException e) {
+            UPDATE_TIMER.error();
             e.printStackTrace();
             return false;
+        } finally {
+            UPDATE_TIMER.recordSince(start);
         }
     }
 
 
     public User findByEmail(String email) {
+        long start = System.nanoTime();
         String sql = "SELECT * FROM users WHERE email = ?";
         try (Connection conn = DB.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -62,25 +81,20 @@ public class UserRepository {
             ResultSet rs = stmt.executeQuery();
 
             if (rs.next()) {
-                User user = new User();
-                user.setId(rs.getString("id"));
-                user.setUsername(rs.getString("username"));
-                user.setEmail(rs.getString("email"));
-                user.setPasswordHash(rs.getString("passwordHash"));
-                user.setPasswordSalt(rs.getString("passwordSalt"));
-                user.setCredit(rs.getDouble("credit"));
-                user.setSubscription(com.com.SymWall.model.SubscriptionType.valueOf(rs.getString("subscription")));
-                user.setCreatedAt(rs.getTimestamp("createdAt").toLocalDateTime());
-                return user;
+                return readUser(rs);
             }
 
         } catch (SQLException e) {
+            FIND_BY_EMAIL_TIMER.error();
             e.printStackTrace();
+        } finally {
+            FIND_BY_EMAIL_TIMER.recordSince(start);
         }
         return null;
     }
 
     public List<User> findAll() {
+        long start = System.nanoTime();
         String sql = "SELECT * FROM users";
         List<User> users = new ArrayList<>();
 
@@ -89,25 +103,33 @@ public class UserRepository {
              ResultSet rs = stmt.executeQuery()) {
 
             while (rs.next()) {
-                User user = new User();
-                user.setId(rs.getString("id"));
-                user.setUsername(rs.getString("username"));
-                user.setEmail(rs.getString("email"));
-                user.setPasswordHash(rs.getString("passwordHash"));
-                user.setPasswordSalt(rs.getString("passwordSalt"));
-                user.setCredit(rs.getDouble("credit"));
-                user.setSubscription(com.com.SymWall.model.SubscriptionType.valueOf(rs.getString("subscription")));
-                user.setCreatedAt(rs.getTimestamp("createdAt").toLocalDateTime());
-                users.add(user);
+                users.add(readUser(rs));
             }
 
         } catch (SQLException e) {
+            FIND_ALL_TIMER.error();
             e.printStackTrace();
+        } finally {
+            FIND_ALL_TIMER.recordSince(start);
         }
         return users;
     }
 
+    private static User readUser(ResultSet rs) throws SQLException {
+        User user = new User();
+        user.setId(rs.getString("id"));
+        user.setUsername(rs.getString("username"));
+        user.setEmail(rs.getString("email"));
+        user.setPasswordHash(rs.getString("passwordHash"));
+        user.setPasswordSalt(rs.getString("passwordSalt"));
+        user.setCredit(rs.getDouble("credit"));
+        user.setSubscription(SubscriptionType.valueOf(rs.getString("subscription")));
+        user.setCreatedAt(rs.getTimestamp("createdAt").toLocalDateTime());
+        return user;
+    }
+
     public boolean updateCredit(String userId, double newCredit) {
+        long start = System.nanoTime();
         String sql = "UPDATE users SET credit = ? WHERE id = ?";
         try (Connection conn = DB.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -118,12 +140,16 @@ public class UserRepository {
             return stmt.executeUpdate() > 0;
 
         } catch (SQLException e) {
+            UPDATE_CREDIT_TIMER.error();
             e.printStackTrace();
             return false;
+        } finally {
+            UPDATE_CREDIT_TIMER.recordSince(start);
         }
     }
 
     public boolean deleteById(String userId) {
+        long start = System.nanoTime();
         String sql = "DELETE FROM users WHERE id = ?";
         try (Connection conn = DB.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -133,8 +159,11 @@ public class UserRepository {
             return stmt.executeUpdate() > 0;
 
         } catch (SQLException e) {
+            DELETE_BY_ID_TIMER.error();
             e.printStackTrace();
             return false;
+        } finally {
+            DELETE_BY_ID_TIMER.recordSince(start);
         }
     }
 }
@@ -0,0 +1,71 @@
+package com.com.SymWall.server;
+
+import com.com.SymWall.model.User;
+import com.com.SymWall.model.UserManager;
+import org.json.JSONObject;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Account events on the {@code account:<email>} topics. Besides the explicit changes it sweeps the
+ * subscribed accounts once a minute, so a client sees its premium plan expire without polling
+ * get_user_status.
+ */
+public final class AccountNotifier {
+
+    private static final String PREFIX = "account:";
+
+    private AccountNotifier() {
+    }
+
+    public static String topic(String email) {
+        return PREFIX + email;
+    }
+
+    public static void changed(User user) {
+        JSONObject event = new JSONObject()
+                .put("event", "account_changed")
+                .put("credit", user.getCredit())
+                .put("subscription", user.getSubscription().toString())
+                .put("subscriptionExpireAt", user.getSubscriptionExpireAt() != null ? user.getSubscriptionExpireAt().toString() : JSONObject.NULL);
+        PushHub.get().publish(topic(user.getEmail()), "account", event);
+    }
+
+    public static void deleted(String email) {
+        PushHub.get().publish(topic(email), "account", new JSONObject().put("event", "account_deleted"));
+    }
+
+    public static void startExpirySweep(UserManager userManager) {
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "account-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(() -> sweep(userManager), 1, 1, TimeUnit.MINUTES);
+    }
+
+    private static void sweep(UserManager userManager) {
+        LocalDateTime now = LocalDateTime.now();
+        for (String topic : PushHub.get().topics()) {
+            if (!topic.startsWith(PREFIX)) {
+                continue;
+            }
+            // update() rather than getUserByEmail(), which would downgrade without telling us
+            boolean[] expired = new boolean[1];
+            User user = userManager.update(topic.substring(PREFIX.length()), current -> {
+                if (current.getSubscriptionExpireAt() == null || !now.isAfter(current.getSubscriptionExpireAt())) {
+                    return null;
+                }
+                expired[0] = true;
+                current.checkAndDowngradeIfExpired();
+                return current;
+            });
+            if (expired[0] && user != null) {
+                changed(user);
+            }
+        }
+    }
+}
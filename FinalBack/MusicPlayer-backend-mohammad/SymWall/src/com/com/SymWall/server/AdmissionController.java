@@ -0,0 +1,173 @@
+package com.com.SymWall.server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides early whether the server takes on more work: caps open connections and requests in flight,
+ * and rate-limits each client IP and each account per class of action. Everything is counters and
+ * {@link TokenBucket}s in concurrent maps, so admission itself never takes a lock.
+ */
+public class AdmissionController {
+
+    public enum ActionClass {
+        AUTH(10, 20, 5, 10),
+        READ(50, 100, 50, 100),
+        WRITE(5, 10, 2, 5);
+
+        final double ipRate;
+        final int ipBurst;
+        final double accountRate;
+        final int accountBurst;
+
+        ActionClass(double ipRate, int ipBurst, double accountRate, int accountBurst) {
+            this.ipRate = ipRate;
+            this.ipBurst = ipBurst;
+            this.accountRate = accountRate;
+            this.accountBurst = accountBurst;
+        }
+
+        public static ActionClass of(String action) {
+            switch (action) {
+                case "get_salt":
+                case "get_nonce":
+                case "login_request":
+                case "resume_session":
+                case "signup_request":
+                case "delete_account_request":
+                    return AUTH;
+                case "update_premium_status":
+                    return WRITE;
+                default:
+                    return READ;
+            }
+        }
+    }
+
+    private static final long CONNECTION_RETRY_MS = 1000;
+    private static final long IN_FLIGHT_RETRY_MS = 100;
+
+    private final int maxConnections;
+    private final int maxInFlight;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+
+    public AdmissionController(int maxConnections, int maxInFlight) {
+        this.maxConnections = maxConnections;
+        this.maxInFlight = maxInFlight;
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "admission-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweepIdleBuckets, 30, 30, TimeUnit.SECONDS);
+    }
+
+    public boolean tryOpenConnection() {
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            rejectedConnections.increment();
+            return false;
+        }
+        return true;
+    }
+
+    public void connectionClosed() {
+        connections.decrementAndGet();
+    }
+
+    // For a connection let in by tryOpenConnection that the server then had no thread for.
+    public void connectionRefused() {
+        connections.decrementAndGet();
+        rejectedConnections.increment();
+    }
+
+    public long connectionRetryAfterMs() {
+        return CONNECTION_RETRY_MS;
+    }
+
+    /**
+     * Applies the rate limits and the in-flight cap to one request.
+     *
+     * @param account email the request is about, or null
+     * @return 0 if admitted (the caller must then call {@link #requestFinished()}), otherwise a retry-after in ms
+     */
+    public long tryBeginRequest(String clientIp, String account, String action) {
+        long wait = charge(clientIp, account, action, System.nanoTime());
+        if (wait > 0) {
+            rateLimited.increment();
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait));
+        }
+        return beginInFlight();
+    }
+
+    /**
+     * Admission for a batch: each step is rate-limited as if it had been sent on its own, and the
+     * batch as a whole takes one in-flight slot. Stops charging at the first step that is limited.
+     *
+     * @param actions  action name of every step
+     * @param accounts email of every step, or null entries
+     * @return same as {@link #tryBeginRequest}
+     */
+    public long tryBeginBatch(String clientIp, List<String> actions, List<String> accounts) {
+        long now = System.nanoTime();
+        for (int i = 0; i < actions.size(); i++) {
+            long wait = charge(clientIp, accounts.get(i), actions.get(i), now);
+            if (wait > 0) {
+                rateLimited.increment();
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait));
+            }
+        }
+        return beginInFlight();
+    }
+
+    // Takes one token from the IP bucket and, if known, the account bucket of the action's class.
+    private long charge(String clientIp, String account, String action, long now) {
+        ActionClass actionClass = ActionClass.of(action);
+        long wait = bucket("ip:" + actionClass + ':' + clientIp, actionClass.ipRate, actionClass.ipBurst).tryAcquire(now);
+        if (wait == 0 && account != null) {
+            wait = bucket("acct:" + actionClass + ':' + account, actionClass.accountRate, actionClass.accountBurst).tryAcquire(now);
+        }
+        return wait;
+    }
+
+    private long beginInFlight() {
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            rejectedRequests.increment();
+            return IN_FLIGHT_RETRY_MS;
+        }
+        return 0;
+    }
+
+    public void requestFinished() {
+        inFlight.decrementAndGet();
+    }
+
+    private TokenBucket bucket(String key, double rate, int burst) {
+        TokenBucket bucket = buckets.get(key);
+        return bucket != null ? bucket : buckets.computeIfAbsent(key, k -> new TokenBucket(rate, burst));
+    }
+
+    private void sweepIdleBuckets() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.isIdle(now));
+    }
+
+    public int connections() { return connections.get(); }
+    public int inFlight() { return inFlight.get(); }
+    public long rejectedConnections() { return rejectedConnections.sum(); }
+    public long rejectedRequests() { return rejectedRequests.sum(); }
+    public long rateLimited() { return rateLimited.sum(); }
+}
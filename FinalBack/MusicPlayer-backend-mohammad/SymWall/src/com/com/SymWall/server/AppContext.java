@@ -0,0 +1,136 @@
+package com.com.SymWall.server;
+
+import com.com.SymWall.api.StatsService;
+import com.com.SymWall.handler.RequestHandler;
+import com.com.SymWall.model.SubscriptionType;
+import com.com.SymWall.model.UserManager;
+import com.com.SymWall.repository.MusicRepository;
+import com.com.SymWall.util.Log;
+import com.com.SymWall.util.Metrics;
+import com.com.SymWall.util.PasswordHasher;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide services shared by every connection. Built once on first use, so accepting a
+ * client no longer reloads users.json and all connections see the same users and login nonces.
+ */
+public final class AppContext {
+
+    private static final class Holder {
+        private static final AppContext INSTANCE = new AppContext();
+    }
+
+    private final UserManager userManager;
+    private final NonceStore loginNonces;
+    private final SessionTokens sessionTokens;
+    private final MusicRepository musicRepository;
+    private final RequestHandler requestHandler;
+    private final ExecutorService requestWorkers;
+    private final AdmissionController admission;
+    private final ConnectionTimeouts timeouts;
+
+    private AppContext() {
+        long start = System.nanoTime();
+        userManager = new UserManager();
+        loginNonces = new NonceStore(
+                Long.getLong("symwall.nonce.ttlMs", 120_000),
+                Integer.getInteger("symwall.nonce.capacity", 100_000),
+                Integer.getInteger("symwall.nonce.perAccount", 4));
+        sessionTokens = new SessionTokens(UserManager.DATA_DIR,
+                Long.getLong("symwall.session.ttlMs", TimeUnit.DAYS.toMillis(30)));
+        musicRepository = new MusicRepository();
+        // pipelined requests (those with a requestId) from all connections and the steps of batches run here
+        requestWorkers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2);
+        requestHandler = new RequestHandler(userManager, loginNonces, sessionTokens, musicRepository, requestWorkers);
+        admission = new AdmissionController(
+                Integer.getInteger("symwall.server.maxConnections", 10_000),
+                Integer.getInteger("symwall.server.maxInFlight", 512));
+        timeouts = new ConnectionTimeouts(
+                Long.getLong("symwall.server.idleTimeoutMs", 5 * 60_000),
+                Long.getLong("symwall.server.readTimeoutMs", 30_000),
+                Long.getLong("symwall.server.writeTimeoutMs", 30_000));
+        AccountNotifier.startExpirySweep(userManager);
+        registerGauges();
+        StatsService.start(Integer.getInteger("symwall.stats.port", StatsService.DEFAULT_PORT));
+        System.out.println("Application context ready in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private void registerGauges() {
+        Metrics.gauge("server_connections", admission::connections);
+        Metrics.gauge("server_in_flight", admission::inFlight);
+        Metrics.gauge("server_rejected_connections_total", admission::rejectedConnections);
+        Metrics.gauge("server_rejected_requests_total", admission::rejectedRequests);
+        Metrics.gauge("server_rate_limited_total", admission::rateLimited);
+        Metrics.gauge("server_reaped_idle_total", timeouts::reapedIdle);
+        Metrics.gauge("server_reaped_read_total", timeouts::reapedRead);
+        Metrics.gauge("server_reaped_write_total", timeouts::reapedWrite);
+        Metrics.gauge("nonces_outstanding", loginNonces::size);
+        Metrics.gauge("nonces_issued_total", loginNonces::issued);
+        Metrics.gauge("nonces_consumed_total", loginNonces::consumed);
+        Metrics.gauge("nonces_expired_total", loginNonces::expired);
+        Metrics.gauge("nonces_evicted_total", loginNonces::evicted);
+        Metrics.gauge("sessions_issued_total", sessionTokens::issued);
+        Metrics.gauge("sessions_verified_total", sessionTokens::verified);
+        Metrics.gauge("sessions_rejected_total", sessionTokens::rejected);
+        Metrics.gauge("sessions_revocations", sessionTokens::revocations);
+        Metrics.gauge("users_total", userManager::size);
+        for (SubscriptionType type : SubscriptionType.values()) {
+            Metrics.gauge("users_" + type.name().toLowerCase(Locale.ROOT), () -> userManager.countBySubscription(type));
+        }
+        Metrics.gauge("users_journal_records_total", userManager::journalRecords);
+        Metrics.gauge("users_journal_fsyncs_total", userManager::journalFsyncs);
+        Metrics.gauge("users_journal_bytes", userManager::journalBytes);
+        Metrics.gauge("users_compactions_total", userManager::compactions);
+        Metrics.gauge("users_journal_poisoned", () -> userManager.journalPoisoned() ? 1 : 0);
+        Metrics.gauge("password_hash_queued", PasswordHasher.get()::queued);
+        Metrics.gauge("password_hash_active", PasswordHasher.get()::active);
+        Metrics.gauge("password_hash_rejected_total", PasswordHasher.get()::rejected);
+        Metrics.gauge("log_published_total", Log::published);
+        Metrics.gauge("push_published_total", PushHub.get()::published);
+        Metrics.gauge("push_delivered_total", PushHub.get()::delivered);
+        Metrics.gauge("push_coalesced_total", PushHub.get()::coalesced);
+        Metrics.gauge("push_overflows_total", PushHub.get()::overflows);
+        Metrics.gauge("push_topics", () -> PushHub.get().topics().size());
+        Metrics.gauge("log_dropped_total", Log::dropped);
+    }
+
+    public static AppContext get() {
+        return Holder.INSTANCE;
+    }
+
+    public UserManager userManager() {
+        return userManager;
+    }
+
+    public NonceStore loginNonces() {
+        return loginNonces;
+    }
+
+    public SessionTokens sessionTokens() {
+        return sessionTokens;
+    }
+
+    public MusicRepository musicRepository() {
+        return musicRepository;
+    }
+
+    public RequestHandler requestHandler() {
+        return requestHandler;
+    }
+
+    public ExecutorService requestWorkers() {
+        return requestWorkers;
+    }
+
+    public AdmissionController admission() {
+        return admission;
+    }
+
+    public ConnectionTimeouts timeouts() {
+        return timeouts;
+    }
+}
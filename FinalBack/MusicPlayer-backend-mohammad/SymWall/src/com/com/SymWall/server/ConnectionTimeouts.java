@@ -0,0 +1,72 @@
+package com.com.SymWall.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Idle, read and write timeouts for client connections, driven by one {@link TimingWheel}.
+ * Each connection has a single pending check. Activity does not touch the wheel; when the check
+ * fires it either reaps the connection or re-arms itself for the time that is actually left.
+ * Clients that want to stay connected while idle send the {@code ping} action.
+ */
+public class ConnectionTimeouts {
+
+    private final long idleNanos;
+    private final long readNanos;
+    private final long writeNanos;
+    private final TimingWheel wheel = new TimingWheel(1, TimeUnit.SECONDS, 512, "connection-timeouts");
+
+    private final LongAdder reapedIdle = new LongAdder();
+    private final LongAdder reapedRead = new LongAdder();
+    private final LongAdder reapedWrite = new LongAdder();
+
+    public ConnectionTimeouts(long idleMillis, long readMillis, long writeMillis) {
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        this.readNanos = TimeUnit.MILLISECONDS.toNanos(readMillis);
+        this.writeNanos = TimeUnit.MILLISECONDS.toNanos(writeMillis);
+    }
+
+    public void watch(TrackedConnection connection) {
+        arm(connection, Math.min(idleNanos, Math.min(readNanos, writeNanos)));
+    }
+
+    private void arm(TrackedConnection connection, long delayNanos) {
+        wheel.schedule(() -> check(connection), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void check(TrackedConnection connection) {
+        if (!connection.isOpen()) {
+            return;
+        }
+        long now = System.nanoTime();
+
+        long writeSince = connection.pendingWriteSinceNanos();
+        if (writeSince != 0 && now - writeSince >= writeNanos) {
+            reapedWrite.increment();
+            connection.reap("write timeout");
+            return;
+        }
+        long readSince = connection.partialReadSinceNanos();
+        if (readSince != 0 && now - readSince >= readNanos) {
+            reapedRead.increment();
+            connection.reap("read timeout");
+            return;
+        }
+        long idleFor = now - connection.lastActivityNanos();
+        if (idleFor >= idleNanos) {
+            reapedIdle.increment();
+            connection.reap("idle timeout");
+            return;
+        }
+
+        long next = idleNanos - idleFor;
+        if (writeSince != 0) next = Math.min(next, writeNanos - (now - writeSince));
+        if (readSince != 0) next = Math.min(next, readNanos - (now - readSince));
+        // a stalled read or write may start any moment, so never sleep past their limits
+        arm(connection, Math.min(next, Math.min(readNanos, writeNanos)));
+    }
+
+    public long reapedIdle() { return reapedIdle.sum(); }
+    public long reapedRead() { return reapedRead.sum(); }
+    public long reapedWrite() { return reapedWrite.sum(); }
+}
@@ -0,0 +1,74 @@
+package com.com.SymWall.server;
+
+import com.com.SymWall.handler.FrameCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+
+/**
+ * Incremental counterpart of {@link FrameCodec} for the NIO transport: checks the preamble,
+ * then collects length-prefixed frames across reads and hands every JSON frame on as text.
+ */
+public class FrameDecoder implements MessageFramer {
+
+    private final ByteBuffer header = ByteBuffer.allocate(FrameCodec.HEADER_BYTES);
+    private int preambleRead = 0;
+    private int typeAndFlags;
+    private byte[] body;
+    private int bodyRead;
+
+    @Override
+    public void feed(ByteBuffer buffer, Consumer<String> sink) {
+        while (buffer.hasRemaining()) {
+            if (preambleRead < FrameCodec.PREAMBLE.length) {
+                if (buffer.get() != FrameCodec.PREAMBLE[preambleRead++]) {
+                    throw new IllegalStateException("Bad binary preamble");
+                }
+                continue;
+            }
+            if (body == null) {
+                while (header.hasRemaining() && buffer.hasRemaining()) {
+                    header.put(buffer.get());
+                }
+                if (header.hasRemaining()) {
+                    return;
+                }
+                header.flip();
+                int length = header.getInt();
+                typeAndFlags = header.get() & 0xFF;
+                header.clear();
+                if (length < 0 || length > FrameCodec.MAX_FRAME_BYTES) {
+                    throw new IllegalStateException("Frame of " + length + " bytes is not allowed");
+                }
+                body = new byte[length];
+                bodyRead = 0;
+            }
+            int n = Math.min(buffer.remaining(), body.length - bodyRead);
+            buffer.get(body, bodyRead, n);
+            bodyRead += n;
+            if (bodyRead == body.length) {
+                deliver(sink);
+                body = null;
+            }
+        }
+    }
+
+    @Override
+    public boolean hasPartialMessage() {
+        return body != null || header.position() > 0
+                || (preambleRead > 0 && preambleRead < FrameCodec.PREAMBLE.length);
+    }
+
+    private void deliver(Consumer<String> sink) {
+        if (FrameCodec.type(typeAndFlags) != FrameCodec.TYPE_JSON) {
+            throw new IllegalStateException("Unsupported inbound frame type " + FrameCodec.type(typeAndFlags));
+        }
+        try {
+            sink.accept(new String(FrameCodec.payload(typeAndFlags, body), StandardCharsets.UTF_8));
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed frame: " + e.getMessage());
+        }
+    }
+}
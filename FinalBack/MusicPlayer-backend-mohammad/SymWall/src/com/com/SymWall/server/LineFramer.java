@@ -0,0 +1,52 @@
+package com.com.SymWall.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Incrementally splits newline-delimited messages out of the bytes read from a channel.
+ * Partial lines (including UTF-8 sequences cut in half) are kept until the rest arrives.
+ */
+public class LineFramer implements MessageFramer {
+
+    private final int maxLineBytes;
+    private byte[] pending = new byte[256];
+    private int pendingLength = 0;
+
+    public LineFramer(int maxLineBytes) {
+        this.maxLineBytes = maxLineBytes;
+    }
+
+    @Override
+    public void feed(ByteBuffer buffer, Consumer<String> sink) {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                int length = pendingLength;
+                if (length > 0 && pending[length - 1] == '\r') {
+                    length--;
+                }
+                String line = new String(pending, 0, length, StandardCharsets.UTF_8).trim();
+                pendingLength = 0;
+                if (!line.isEmpty()) {
+                    sink.accept(line);
+                }
+                continue;
+            }
+            if (pendingLength == maxLineBytes) {
+                throw new IllegalStateException("Line exceeds " + maxLineBytes + " bytes");
+            }
+            if (pendingLength == pending.length) {
+                pending = Arrays.copyOf(pending, Math.min(pending.length * 2, maxLineBytes));
+            }
+            pending[pendingLength++] = b;
+        }
+    }
+
+    @Override
+    public boolean hasPartialMessage() {
+        return pendingLength > 0;
+    }
+}
@@ -0,0 +1,18 @@
+package com.com.SymWall.server;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+// Turns the raw bytes of one connection into complete protocol messages.
+public interface MessageFramer {
+
+    /**
+     * Consumes everything remaining in {@code buffer} and passes each complete message to {@code sink}.
+     *
+     * @throws IllegalStateException if the peer violates the framing; the connection should be closed
+     */
+    void feed(ByteBuffer buffer, Consumer<String> sink);
+
+    // True while part of a message has been received but not the rest.
+    boolean hasPartialMessage();
+}
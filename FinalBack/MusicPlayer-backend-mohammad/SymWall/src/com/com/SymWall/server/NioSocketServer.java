@@ -0,0 +1,376 @@
+package com.com.SymWall.server;
+
+import com.com.SymWall.handler.FrameCodec;
+import com.com.SymWall.handler.RequestHandler;
+import com.com.SymWall.handler.RequestPipeline;
+import com.com.SymWall.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking transport for the 8081 protocol. A few selector threads own all sockets and only
+ * move bytes; complete lines are handed to a worker pool that calls {@link RequestHandler#handleRequest}.
+ * Lines of one connection are fed to its {@link RequestPipeline} one after another, so requests without
+ * a requestId keep their order. A drain never waits for the pipeline: when its window is full the line
+ * stays in the inbox and the drain is started again once a request of that connection finishes.
+ */
+public class NioSocketServer {
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_LINE_BYTES = 1024 * 1024;
+    private static final int PIPELINE_WINDOW = 16;
+    // Push events wait while more than this many buffers are queued for a connection.
+    private static final int MAX_QUEUED_WRITES = 64;
+    // Reading stops once this many lines wait for the pipeline and starts again when half of them are taken.
+    // Lines already in the read buffer are still queued, so the inbox can pass this by one read's worth.
+    private static final int MAX_INBOX_LINES = 256;
+    private static final int RESUME_READING_AT = MAX_INBOX_LINES / 2;
+    // Queued after the last line when the client half-closes; compared by identity.
+    private static final String END_OF_INPUT = new String("");
+
+    private final int port;
+    private final int backlog;
+    private final IoLoop[] loops;
+    private final ExecutorService workers;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private RequestHandler requestHandler;
+    private ExecutorService requestWorkers;
+    private AdmissionController admission;
+    private ConnectionTimeouts timeouts;
+
+    public NioSocketServer(int port, int backlog, int ioThreads, int workerThreads) {
+        this.port = port;
+        this.backlog = backlog;
+        this.loops = new IoLoop[ioThreads];
+        this.workers = Executors.newFixedThreadPool(workerThreads);
+    }
+
+    public void start() {
+        requestHandler = AppContext.get().requestHandler();
+        requestWorkers = AppContext.get().requestWorkers();
+        admission = AppContext.get().admission();
+        timeouts = AppContext.get().timeouts();
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress("0.0.0.0", port), backlog);
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new IoLoop();
+                Thread thread = new Thread(loops[i], "nio-io-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            System.out.println("NIO server is running on port " + port + " with " + loops.length + " I/O threads");
+
+            while (true) {
+                SocketChannel channel = serverChannel.accept();
+                if (!admission.tryOpenConnection()) {
+                    reject(channel);
+                    continue;
+                }
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                IoLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+                loop.execute(() -> loop.register(channel));
+            }
+        } catch (IOException e) {
+            Log.error("net", "server_failed", e, "port", port);
+        }
+    }
+
+    // Still in blocking mode here, so the short busy line is written directly before closing.
+    private void reject(SocketChannel channel) {
+        try (SocketChannel rejected = channel) {
+            String busy = RequestHandler.busyResponse(null, admission.connectionRetryAfterMs()) + "\n";
+            rejected.write(ByteBuffer.wrap(busy.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            Log.warn("net", "reject_failed", "error", e.getMessage());
+        }
+    }
+
+    private final class IoLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        // Reads happen only on this thread, so one buffer is shared by all of its connections.
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+        IoLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(SocketChannel channel) {
+            try {
+                Connection connection = new Connection(channel, this);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                timeouts.watch(connection);
+            } catch (ClosedChannelException e) {
+                admission.connectionClosed();
+                Log.debug("net", "closed_before_registration");
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isValid() && key.isReadable()) {
+                            connection.onReadable(readBuffer);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    }
+                } catch (Exception e) {
+                    Log.error("net", "io_loop_failed", e);
+                }
+            }
+        }
+    }
+
+    private final class Connection implements TrackedConnection {
+        private final SocketChannel channel;
+        private final IoLoop loop;
+        private final String clientIp;
+        // Chosen from the first byte the client sends: newline JSON or binary frames.
+        private MessageFramer framer;
+        private volatile boolean binary = false;
+        private final Queue<String> inbox = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger inboxSize = new AtomicInteger();
+        private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+        private final RequestPipeline pipeline;
+        private final PushSession push;
+        private volatile boolean closed = false;
+        // Only touched on the I/O thread.
+        private boolean inputClosed = false;
+        private boolean closeWhenFlushed = false;
+        private boolean readPaused = false;
+        private volatile long lastActivityNanos = System.nanoTime();
+        private volatile long partialReadSinceNanos = 0;
+        private volatile long pendingWriteSinceNanos = 0;
+        private SelectionKey key;
+
+        Connection(SocketChannel channel, IoLoop loop) {
+            this.channel = channel;
+            this.loop = loop;
+            this.clientIp = channel.socket().getInetAddress().getHostAddress();
+            Log.info("net", "connected", "ip", clientIp, "transport", "nio");
+            this.push = new PushSession(PushHub.get(), this::send, () -> outbound.size() > MAX_QUEUED_WRITES);
+            this.pipeline = new RequestPipeline(requestHandler, requestWorkers, PIPELINE_WINDOW, admission, clientIp, push,
+                    this::send, this::windowFreed);
+        }
+
+        void onReadable(ByteBuffer buffer) {
+            try {
+                buffer.clear();
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    // Half-close: answer what was already sent before closing.
+                    inputClosed = true;
+                    key.interestOps(outbound.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+                    enqueue(END_OF_INPUT);
+                    return;
+                }
+                buffer.flip();
+                if (framer == null && buffer.hasRemaining()) {
+                    binary = buffer.get(buffer.position()) == FrameCodec.MAGIC;
+                    framer = binary ? new FrameDecoder() : new LineFramer(MAX_LINE_BYTES);
+                }
+                if (framer != null) {
+                    framer.feed(buffer, this::enqueue);
+                    if (!framer.hasPartialMessage()) {
+                        partialReadSinceNanos = 0;
+                    } else if (partialReadSinceNanos == 0) {
+                        partialReadSinceNanos = System.nanoTime();
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                Log.warn("net", "client_error", "ip", clientIp, "error", e.getMessage());
+                close();
+            }
+        }
+
+        void onWritable() {
+            try {
+                ByteBuffer head;
+                while ((head = outbound.peek()) != null) {
+                    channel.write(head);
+                    if (head.hasRemaining()) {
+                        return;
+                    }
+                    outbound.poll();
+                }
+                pendingWriteSinceNanos = 0;
+                lastActivityNanos = System.nanoTime();
+                push.resume();
+                if (closeWhenFlushed) {
+                    close();
+                    return;
+                }
+                key.interestOps(readOps());
+            } catch (IOException e) {
+                Log.warn("net", "write_failed", "ip", clientIp, "error", e.getMessage());
+                close();
+            }
+        }
+
+        private void enqueue(String line) {
+            lastActivityNanos = System.nanoTime();
+            inbox.add(line);
+            if (inboxSize.incrementAndGet() >= MAX_INBOX_LINES && !readPaused && key.isValid()) {
+                readPaused = true;
+                key.interestOps(readOps() | (key.interestOps() & SelectionKey.OP_WRITE));
+            }
+            if (draining.compareAndSet(false, true)) {
+                workers.execute(this::drain);
+            }
+        }
+
+        // Runs on the I/O thread once the drain has taken enough lines out of a full inbox.
+        private void resumeReading() {
+            if (readPaused && key.isValid()) {
+                readPaused = false;
+                key.interestOps(readOps() | (key.interestOps() & SelectionKey.OP_WRITE));
+            }
+        }
+
+        // Only called on the I/O thread.
+        private int readOps() {
+            return inputClosed || readPaused ? 0 : SelectionKey.OP_READ;
+        }
+
+        // Runs on a worker thread; at most one drain per connection is active at a time.
+        private void drain() {
+            boolean blocked;
+            do {
+                blocked = false;
+                String line;
+                while (!closed && (line = inbox.peek()) != null) {
+                    if (line == END_OF_INPUT) {
+                        if (!pipeline.isIdle()) {
+                            blocked = true;
+                            break;
+                        }
+                        take();
+                        loop.execute(this::closeWhenFlushed);
+                        return;
+                    }
+                    if (!pipeline.trySubmit(line)) {
+                        blocked = true;
+                        break;
+                    }
+                    take();
+                }
+                draining.set(false);
+                // While blocked, a request still in flight calls windowFreed when it ends; only an idle
+                // window that emptied before draining was cleared needs the retry here.
+            } while (!closed && !inbox.isEmpty() && (!blocked || pipeline.isIdle()) && draining.compareAndSet(false, true));
+        }
+
+        private void take() {
+            inbox.poll();
+            if (inboxSize.decrementAndGet() == RESUME_READING_AT) {
+                loop.execute(this::resumeReading);
+            }
+        }
+
+        // Called by the pipeline on the thread that finished a request of this connection.
+        private void windowFreed() {
+            if (!closed && !inbox.isEmpty() && draining.compareAndSet(false, true)) {
+                workers.execute(this::drain);
+            }
+        }
+
+        private void send(String response) {
+            if (pendingWriteSinceNanos == 0) {
+                pendingWriteSinceNanos = System.nanoTime();
+            }
+            outbound.add(binary
+                    ? FrameCodec.encodeJson(response)
+                    : ByteBuffer.wrap((response + "\n").getBytes(StandardCharsets.UTF_8)));
+            loop.execute(() -> {
+                if (key.isValid()) {
+                    key.interestOps(readOps() | SelectionKey.OP_WRITE);
+                }
+            });
+        }
+
+        @Override
+        public long lastActivityNanos() {
+            return lastActivityNanos;
+        }
+
+        @Override
+        public long partialReadSinceNanos() {
+            return partialReadSinceNanos;
+        }
+
+        @Override
+        public long pendingWriteSinceNanos() {
+            return pendingWriteSinceNanos;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !closed;
+        }
+
+        @Override
+        public void reap(String reason) {
+            Log.info("net", "reaped", "ip", clientIp, "reason", reason);
+            loop.execute(this::close);
+        }
+
+        private void closeWhenFlushed() {
+            closeWhenFlushed = true;
+            if (outbound.isEmpty()) {
+                close();
+            }
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            admission.connectionClosed();
+            closed = true;
+            push.close();
+            Log.info("net", "closed", "ip", clientIp);
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Log.warn("net", "close_failed", "ip", clientIp, "error", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.com.SymWall.server;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outstanding login nonces, shared by all connections. Each nonce lives for a fixed TTL and an
+ * account keeps at most a few of them (the oldest is replaced), so logins started on two devices do
+ * not cancel each other. Because every entry has the same TTL, insertion order is expiry order:
+ * one FIFO queue is trimmed from its head on every call, which keeps expiry amortised O(1) without
+ * scanning. The queue is also capped, so a flood of get_nonce calls evicts the oldest nonces
+ * instead of growing memory.
+ */
+public class NonceStore {
+
+    private final long ttlNanos;
+    private final int capacity;
+    private final int perAccount;
+
+    // guarded by this
+    private final ArrayDeque<Entry> byAge = new ArrayDeque<>();
+    private final Map<String, ArrayDeque<Entry>> byAccount = new HashMap<>();
+    private int live = 0;
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder consumed = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    public NonceStore(long ttlMillis, int capacity, int perAccount) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.capacity = capacity;
+        this.perAccount = perAccount;
+    }
+
+    private static final class Entry {
+        final String account;
+        final String nonce;
+        final long expiresAtNanos;
+        // false once consumed or replaced; the queue drops it when it reaches the head
+        boolean live = true;
+
+        Entry(String account, String nonce, long expiresAtNanos) {
+            this.account = account;
+            this.nonce = nonce;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    public synchronized void put(String account, String nonce) {
+        long now = System.nanoTime();
+        expire(now);
+        while (byAge.size() >= capacity) {
+            Entry oldest = byAge.poll();
+            if (oldest.live) {
+                evicted.increment();
+                kill(oldest);
+            }
+        }
+        ArrayDeque<Entry> outstanding = byAccount.computeIfAbsent(account, a -> new ArrayDeque<>(perAccount));
+        if (outstanding.size() >= perAccount) {
+            Entry replaced = outstanding.poll();
+            replaced.live = false;
+            live--;
+        }
+        Entry entry = new Entry(account, nonce, now + ttlNanos);
+        outstanding.add(entry);
+        byAge.add(entry);
+        live++;
+        issued.increment();
+    }
+
+    /**
+     * Removes and accepts the first unexpired nonce of the account for which {@code matches} is true.
+     * The predicate runs under the store's lock, so it should be quick (a hash comparison).
+     */
+    public synchronized boolean consume(String account, Predicate<String> matches) {
+        long now = System.nanoTime();
+        expire(now);
+        ArrayDeque<Entry> outstanding = byAccount.get(account);
+        if (outstanding == null) {
+            return false;
+        }
+        Iterator<Entry> it = outstanding.iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (matches.test(entry.nonce)) {
+                it.remove();
+                entry.live = false;
+                live--;
+                if (outstanding.isEmpty()) {
+                    byAccount.remove(account);
+                }
+                consumed.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // True if the account has at least one unexpired nonce.
+    public synchronized boolean hasNonce(String account) {
+        expire(System.nanoTime());
+        return byAccount.containsKey(account);
+    }
+
+    private void expire(long now) {
+        Entry head;
+        while ((head = byAge.peek()) != null && (!head.live || head.expiresAtNanos - now <= 0)) {
+            byAge.poll();
+            if (head.live) {
+                expired.increment();
+                kill(head);
+            }
+        }
+    }
+
+    private void kill(Entry entry) {
+        entry.live = false;
+        live--;
+        ArrayDeque<Entry> outstanding = byAccount.get(entry.account);
+        if (outstanding != null) {
+            outstanding.remove(entry);
+            if (outstanding.isEmpty()) {
+                byAccount.remove(entry.account);
+            }
+        }
+    }
+
+    public synchronized int size() { return live; }
+    public long issued() { return issued.sum(); }
+    public long consumed() { return consumed.sum(); }
+    public long expired() { return expired.sum(); }
+    public long evicted() { return evicted.sum(); }
+}
@@ -0,0 +1,89 @@
+package com.com.SymWall.server;
+
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fan-out of change events to subscribed connections. Topics are {@code catalog},
+ * {@code track:<id>} and {@code account:<email>}. Publishing encodes the event once and offers the
+ * same string to every subscriber's {@link PushSession}; it never blocks on a connection.
+ * Process-wide like {@link com.com.SymWall.api.CatalogCache}, so repositories can publish without a context.
+ */
+public final class PushHub {
+
+    private static final class Holder {
+        private static final PushHub INSTANCE = new PushHub();
+    }
+
+    private final Map<String, Set<PushSession>> subscribers = new ConcurrentHashMap<>();
+    private final ExecutorService delivery;
+
+    final LongAdder published = new LongAdder();
+    final LongAdder delivered = new LongAdder();
+    final LongAdder coalesced = new LongAdder();
+    final LongAdder overflows = new LongAdder();
+
+    private PushHub() {
+        AtomicInteger threadId = new AtomicInteger();
+        delivery = Executors.newFixedThreadPool(Integer.getInteger("symwall.push.threads", 4), r -> {
+            Thread thread = new Thread(r, "push-delivery-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static PushHub get() {
+        return Holder.INSTANCE;
+    }
+
+    void subscribe(String topic, PushSession session) {
+        subscribers.compute(topic, (t, sessions) -> {
+            Set<PushSession> set = sessions != null ? sessions : ConcurrentHashMap.newKeySet();
+            set.add(session);
+            return set;
+        });
+    }
+
+    void unsubscribe(String topic, PushSession session) {
+        subscribers.computeIfPresent(topic, (t, sessions) -> {
+            sessions.remove(session);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+
+    /**
+     * @param coalesceKey events with the same key replace each other while still queued, e.g. one
+     *                    key per track so only its latest like count is sent to a slow client
+     */
+    public void publish(String topic, String coalesceKey, JSONObject event) {
+        Set<PushSession> sessions = subscribers.get(topic);
+        if (sessions == null || sessions.isEmpty()) {
+            return;
+        }
+        String encoded = event.put("topic", topic).toString();
+        published.increment();
+        for (PushSession session : sessions) {
+            session.offer(coalesceKey, encoded);
+        }
+    }
+
+    public Set<String> topics() {
+        return subscribers.keySet();
+    }
+
+    ExecutorService delivery() {
+        return delivery;
+    }
+
+    public long published() { return published.sum(); }
+    public long delivered() { return delivered.sum(); }
+    public long coalesced() { return coalesced.sum(); }
+    public long overflows() { return overflows.sum(); }
+}
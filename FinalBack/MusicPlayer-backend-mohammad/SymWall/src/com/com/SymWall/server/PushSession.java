@@ -0,0 +1,157 @@
+package com.com.SymWall.server;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * The push side of one connection: its topics and a bounded queue of events waiting to be written.
+ * Queued events with the same coalescing key are replaced by the newer one. If the queue still
+ * overflows, everything queued is dropped and a single {@code resync} event tells the client to
+ * reload its subscribed state instead.
+ * Events are written through the connection's response sink on the hub's delivery threads, one
+ * delivery per session at a time, and only while the connection is not backlogged.
+ */
+public class PushSession {
+
+    public static final int MAX_TOPICS = 64;
+    private static final int MAX_PENDING = 256;
+
+    private final PushHub hub;
+    private final Consumer<String> sink;
+    private final BooleanSupplier backlogged;
+    private final Set<String> topics = ConcurrentHashMap.newKeySet();
+    // guarded by this
+    private final LinkedHashMap<String, String> pending = new LinkedHashMap<>();
+    private boolean resync = false;
+    private final AtomicBoolean delivering = new AtomicBoolean(false);
+    private volatile String account;
+    private volatile boolean closed = false;
+
+    /**
+     * @param sink       the connection's response writer; must be safe for concurrent use
+     * @param backlogged true while earlier output is still waiting to be written; delivery then
+     *                   pauses until {@link #resume()} is called
+     */
+    public PushSession(PushHub hub, Consumer<String> sink, BooleanSupplier backlogged) {
+        this.hub = hub;
+        this.sink = sink;
+        this.backlogged = backlogged;
+    }
+
+    // Email this connection logged in as, or null.
+    public String account() {
+        return account;
+    }
+
+    // A login on this connection; switching accounts drops the old account's subscription.
+    public void authenticate(String email) {
+        String previous = account;
+        account = email;
+        if (previous != null && !previous.equals(email) && topics.remove("account:" + previous)) {
+            hub.unsubscribe("account:" + previous, this);
+        }
+    }
+
+    // Whether subscribing to all of these (duplicates and current topics count once) stays within MAX_TOPICS.
+    public boolean hasRoomFor(Collection<String> wanted) {
+        Set<String> added = new HashSet<>(wanted);
+        added.removeAll(topics);
+        return topics.size() + added.size() <= MAX_TOPICS;
+    }
+
+    // false when the session is closed or already has MAX_TOPICS topics
+    public boolean subscribe(String topic) {
+        if (closed || (!topics.contains(topic) && topics.size() >= MAX_TOPICS)) {
+            return false;
+        }
+        if (topics.add(topic)) {
+            hub.subscribe(topic, this);
+        }
+        return true;
+    }
+
+    public void unsubscribe(String topic) {
+        if (topics.remove(topic)) {
+            hub.unsubscribe(topic, this);
+        }
+    }
+
+    void offer(String coalesceKey, String event) {
+        synchronized (this) {
+            if (closed || resync) {
+                // a resync is already owed; the client reloads everything anyway
+                return;
+            }
+            if (pending.containsKey(coalesceKey)) {
+                hub.coalesced.increment();
+                pending.put(coalesceKey, event);
+            } else if (pending.size() >= MAX_PENDING) {
+                hub.overflows.increment();
+                pending.clear();
+                resync = true;
+            } else {
+                pending.put(coalesceKey, event);
+            }
+        }
+        resume();
+    }
+
+    // Starts delivery if anything is queued; connections call it when their backlog has drained.
+    public void resume() {
+        if (!closed && !backlogged.getAsBoolean() && hasPending() && delivering.compareAndSet(false, true)) {
+            hub.delivery().execute(this::deliver);
+        }
+    }
+
+    private void deliver() {
+        do {
+            String event;
+            while (!closed && !backlogged.getAsBoolean() && (event = poll()) != null) {
+                sink.accept(event);
+                hub.delivered.increment();
+            }
+            delivering.set(false);
+        } while (!closed && !backlogged.getAsBoolean() && hasPending() && delivering.compareAndSet(false, true));
+    }
+
+    private synchronized boolean hasPending() {
+        return resync || !pending.isEmpty();
+    }
+
+    private synchronized String poll() {
+        if (resync) {
+            resync = false;
+            return new JSONObject().put("event", "resync").put("topics", new JSONArray(topics)).toString();
+        }
+        Iterator<Map.Entry<String, String>> it = pending.entrySet().iterator();
+        if (!it.hasNext()) {
+            return null;
+        }
+        String event = it.next().getValue();
+        it.remove();
+        return event;
+    }
+
+    // Called once when the connection closes.
+    public void close() {
+        closed = true;
+        for (String topic : topics) {
+            hub.unsubscribe(topic, this);
+        }
+        topics.clear();
+        synchronized (this) {
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.com.SymWall.server;
+
+import com.com.SymWall.util.Log;
+import org.json.JSONObject;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Signed, expiring session tokens handed out on login. A token is
+ * {@code base64url("v2|issuedAt|expiresAt|generation|email") + "." + base64url(HMAC-SHA256)}, so checking
+ * one needs the server key and the revocation table only, never the user store.
+ * <p>
+ * Each revoked account has a generation in the table and its tokens carry the generation current when
+ * they were issued; revoking moves it on, so only tokens issued afterwards match. The new generation is
+ * at least the current time, not just one more. An entry can then be dropped once its revocation is
+ * older than the token lifetime: every token it refuses has expired, the tokens it accepts are accepted
+ * by the missing entry too, and the next revocation still lands above all of them. So the table stays
+ * small. The key and the table live in the data directory and survive restarts; the table is written
+ * by a background thread, so revoking never waits for the disk, and a burst of revocations is saved once.
+ */
+public class SessionTokens {
+
+    private static final String VERSION = "v2";
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+    private final long ttlMillis;
+    private final Path revocationsFile;
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+    private final Map<String, Revocation> revocations = new ConcurrentHashMap<>();
+    private final ExecutorService revocationWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "session-revocations");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean saveQueued = new AtomicBoolean(false);
+    // set by revoke(), cleared by the save that picks the change up
+    private final AtomicBoolean unsaved = new AtomicBoolean(false);
+    // the writer thread and the shutdown hook both save
+    private final ReentrantLock saveLock = new ReentrantLock();
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder verified = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public static final class Claims {
+        public final String email;
+        public final long issuedAt;
+        public final long expiresAt;
+
+        Claims(String email, long issuedAt, long expiresAt) {
+            this.email = email;
+            this.issuedAt = issuedAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Revocation {
+        private final long generation;
+        private final long revokedAt;
+
+        Revocation(long generation, long revokedAt) {
+            this.generation = generation;
+            this.revokedAt = revokedAt;
+        }
+    }
+
+    /**
+     * @param dataDir directory holding {@code session.key} and {@code session-revocations.json};
+     *                the key is generated on first start
+     */
+    public SessionTokens(String dataDir, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.revocationsFile = Path.of(dataDir, "session-revocations.json");
+        this.key = new SecretKeySpec(loadKey(Path.of(dataDir, "session.key")), ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        loadRevocations();
+        // the writer is a daemon thread; don't lose a revocation it has not written yet
+        Runtime.getRuntime().addShutdownHook(new Thread(this::saveRevocations, "session-shutdown"));
+    }
+
+    public long ttlMillis() {
+        return ttlMillis;
+    }
+
+    public String issue(String email) {
+        return issue(email, System.currentTimeMillis());
+    }
+
+    // The token expires at issuedAt + ttlMillis().
+    public String issue(String email, long issuedAt) {
+        String payload = ENCODER.encodeToString((VERSION + "|" + issuedAt + "|" + (issuedAt + ttlMillis)
+                + "|" + generation(email) + "|" + email).getBytes(StandardCharsets.UTF_8));
+        issued.increment();
+        return payload + "." + ENCODER.encodeToString(sign(payload));
+    }
+
+    /**
+     * @return the token's claims, or null when it is malformed, forged, expired or revoked
+     */
+    public Claims verify(String token) {
+        Claims claims = parse(token);
+        if (claims == null) {
+            rejected.increment();
+            return null;
+        }
+        verified.increment();
+        return claims;
+    }
+
+    private Claims parse(String token) {
+        if (token == null) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0 || dot != token.lastIndexOf('.')) {
+            return null;
+        }
+        String payload = token.substring(0, dot);
+        byte[] mac;
+        String[] fields;
+        try {
+            mac = DECODER.decode(token.substring(dot + 1));
+            fields = new String(DECODER.decode(payload), StandardCharsets.UTF_8).split("\\|", 5);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(mac, sign(payload)) || fields.length != 5 || !VERSION.equals(fields[0])) {
+            return null;
+        }
+        long issuedAt;
+        long expiresAt;
+        long generation;
+        try {
+            issuedAt = Long.parseLong(fields[1]);
+            expiresAt = Long.parseLong(fields[2]);
+            generation = Long.parseLong(fields[3]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        String email = fields[4];
+        if (System.currentTimeMillis() >= expiresAt) {
+            return null;
+        }
+        Revocation revocation = revocations.get(email);
+        if (revocation != null && generation != revocation.generation) {
+            return null;
+        }
+        return new Claims(email, issuedAt, expiresAt);
+    }
+
+    /**
+     * Refuses every token issued to {@code email} so far. Called on password change, account
+     * deletion and a downgrade through update_premium_status. A plan that simply expires keeps its
+     * sessions: tokens carry no plan, and every resume reads the current one from the user store.
+     */
+    public void revoke(String email) {
+        if (email == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        revocations.compute(email, (e, previous) ->
+                new Revocation(Math.max(now, previous != null ? previous.generation + 1 : 0), now));
+        unsaved.set(true);
+        Log.info("session", "revoked", "email", email);
+        scheduleSave();
+    }
+
+    public int revocations() {
+        return revocations.size();
+    }
+
+    public long issued() {
+        return issued.sum();
+    }
+
+    public long verified() {
+        return verified.sum();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    private long generation(String email) {
+        Revocation revocation = revocations.get(email);
+        return revocation != null ? revocation.generation : 0;
+    }
+
+    private byte[] sign(String payload) {
+        return macs.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            // every JVM ships HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] loadKey(Path file) {
+        try {
+            if (Files.exists(file)) {
+                if (isPosix(file)) {
+                    // tightens keys created before the file was made owner-only
+                    Files.setPosixFilePermissions(file, OWNER_ONLY);
+                }
+                return Base64.getDecoder().decode(Files.readString(file, StandardCharsets.US_ASCII).trim());
+            }
+            byte[] secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            createOwnerOnly(file);
+            Files.writeString(file, Base64.getEncoder().encodeToString(secret), StandardCharsets.US_ASCII);
+            Log.info("session", "key_created", "file", file);
+            return secret;
+        } catch (IOException | IllegalArgumentException e) {
+            // tokens signed with a throwaway key simply stop verifying after a restart
+            Log.error("session", "key_unavailable", e, "file", file);
+            byte[] secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            return secret;
+        }
+    }
+
+    // The key is the HMAC secret, so nobody but the server's user may read it.
+    private static void createOwnerOnly(Path file) throws IOException {
+        if (isPosix(file)) {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+            return;
+        }
+        Files.createFile(file);
+        File plain = file.toFile();
+        if (!(plain.setReadable(false, false) && plain.setReadable(true, true)
+                && plain.setWritable(false, false) && plain.setWritable(true, true))) {
+            Log.warn("session", "key_permissions_unchanged", "file", file);
+        }
+    }
+
+    private static boolean isPosix(Path file) {
+        return file.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    private void loadRevocations() {
+        if (!Files.exists(revocationsFile)) {
+            return;
+        }
+        try {
+            JSONObject json = new JSONObject(Files.readString(revocationsFile, StandardCharsets.UTF_8));
+            for (String email : json.keySet()) {
+                JSONObject entry = json.optJSONObject(email);
+                if (entry != null) {
+                    revocations.put(email, new Revocation(entry.getLong("generation"), entry.getLong("revokedAt")));
+                } else {
+                    // written by v1, which only kept the time
+                    long revokedAt = json.getLong(email);
+                    revocations.put(email, new Revocation(revokedAt, revokedAt));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.error("session", "revocations_load_failed", e, "file", revocationsFile);
+        }
+    }
+
+    private void scheduleSave() {
+        // revocations queued while a save is pending are picked up by that save
+        if (saveQueued.compareAndSet(false, true)) {
+            revocationWriter.execute(() -> {
+                saveQueued.set(false);
+                saveRevocations();
+            });
+        }
+    }
+
+    // Revocations are rare, so the whole (pruned) table is rewritten each time.
+    private void saveRevocations() {
+        saveLock.lock();
+        try {
+            if (!unsaved.getAndSet(false)) {
+                return;
+            }
+            long horizon = System.currentTimeMillis() - ttlMillis - TimeUnit.MINUTES.toMillis(1);
+            revocations.values().removeIf(revocation -> revocation.revokedAt < horizon);
+            JSONObject json = new JSONObject();
+            revocations.forEach((email, revocation) -> json.put(email, new JSONObject()
+                    .put("generation", revocation.generation)
+                    .put("revokedAt", revocation.revokedAt)));
+            Path temp = revocationsFile.resolveSibling(revocationsFile.getFileName() + ".tmp");
+            Files.writeString(temp, json.toString(), StandardCharsets.UTF_8);
+            Files.move(temp, revocationsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            unsaved.set(true);
+            Log.error("session", "revocations_save_failed", e, "file", revocationsFile);
+        } finally {
+            saveLock.unlock();
+        }
+    }
+}
@@ -1,21 +1,44 @@
 package com.com.SymWall.server;
 
 import com.com.SymWall.handler.ClientHandler;
+import com.com.SymWall.handler.RequestHandler;
+import com.com.SymWall.util.Log;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class SocketServer {
+    static final int BACKLOG = Integer.getInteger("symwall.server.backlog", 50);
+    static final int BLOCKING_THREADS = Integer.getInteger("symwall.server.blockingThreads", 10);
+
     private final int port = 8081;
-    private final ExecutorService pool = Executors.newFixedThreadPool(10);
+    private final ExecutorService pool;
+
+    // Each connection holds a thread for its whole life, so with no idle thread it is turned away, not queued.
+    public SocketServer() {
+        this(new ThreadPoolExecutor(BLOCKING_THREADS, BLOCKING_THREADS, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>()));
+    }
+
+    public SocketServer(ExecutorService pool) {
+        this.pool = pool;
+    }
 
     public void start() {
         try {
-            ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getByName("0.0.0.0"));
+            AppContext context = AppContext.get();
+            RequestHandler requestHandler = context.requestHandler();
+            AdmissionController admission = context.admission();
+            ServerSocket serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getByName("0.0.0.0"));
             System.out.println("Server is running on all interfaces, port " + port);
             System.out.println("Local IP: " + InetAddress.getLocalHost().getHostAddress());
             System.out.println("\nTest commands (copy and paste these):");
@@ -27,18 +50,59 @@ public class SocketServer {
 
             while (true) {
                 Socket clientSocket = serverSocket.accept();
-                System.out.println("New client connected from: " + clientSocket.getInetAddress());
-                pool.execute(new ClientHandler(clientSocket));
+                if (!admission.tryOpenConnection()) {
+                    rejectConnection(clientSocket, admission.connectionRetryAfterMs());
+                    continue;
+                }
+                try {
+                    pool.execute(new ClientHandler(clientSocket, requestHandler, context.requestWorkers(), admission, context.timeouts()));
+                } catch (RejectedExecutionException e) {
+                    admission.connectionRefused();
+                    rejectConnection(clientSocket, admission.connectionRetryAfterMs());
+                }
             }
 
         } catch (IOException e) {
-            System.err.println("Server error: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("net", "server_failed", e, "port", port);
+        }
+    }
+
+    // Too many open connections: tell the client when to come back instead of queueing it.
+    private static void rejectConnection(Socket clientSocket, long retryAfterMs) {
+        try (Socket socket = clientSocket) {
+            socket.setSoTimeout(1000);
+            OutputStream out = socket.getOutputStream();
+            out.write((RequestHandler.busyResponse(null, retryAfterMs) + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            Log.warn("net", "reject_failed", "error", e.getMessage());
         }
     }
 
+    /**
+     * One virtual thread per connection. Looked up reflectively so the server still builds on JDKs
+     * older than 21; there it falls back to an unbounded cached pool of platform threads.
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Virtual threads are not available on this JVM, using a cached thread pool");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    // Usage: SocketServer [blocking|virtual|nio]
     public static void main(String[] args) {
-        SocketServer server = new SocketServer();
+        String mode = args.length > 0 ? args[0] : "blocking";
+        if (mode.equalsIgnoreCase("nio")) {
+            int ioThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+            new NioSocketServer(8081, BACKLOG, ioThreads, 10).start();
+            return;
+        }
+        SocketServer server = mode.equalsIgnoreCase("virtual")
+                ? new SocketServer(newVirtualThreadExecutor())
+                : new SocketServer();
         server.start();
     }
 }
@@ -0,0 +1,96 @@
+package com.com.SymWall.server;
+
+import com.com.SymWall.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timing wheel: timeouts are dropped into one of {@code wheelSize} buckets by their deadline and a
+ * single thread looks at one bucket per tick. Scheduling is O(1) and a tick only touches the timeouts
+ * that hash to it, so tracking 100k connections costs nothing like 100k timers.
+ * Precision is one tick, which is plenty for connection timeouts.
+ */
+public class TimingWheel {
+
+    private final long tickNanos;
+    private final Queue<Timeout>[] buckets;
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final long startNanos;
+    private long tick = 0;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(long tickDuration, TimeUnit unit, int wheelSize, String threadName) {
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.buckets = new Queue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        this.startNanos = System.nanoTime();
+        Thread ticker = new Thread(this::run, threadName);
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    public void schedule(Runnable task, long delay, TimeUnit unit) {
+        incoming.add(new Timeout(task, System.nanoTime() + unit.toNanos(delay)));
+    }
+
+    private void run() {
+        while (true) {
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long sleep = deadline - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            transferIncoming();
+            expire(buckets[(int) (tick % buckets.length)]);
+            tick++;
+        }
+    }
+
+    // Only the ticker thread touches the buckets, so they need no locking.
+    private void transferIncoming() {
+        Timeout timeout;
+        while ((timeout = incoming.poll()) != null) {
+            long ticksAway = Math.max(0, (timeout.deadlineNanos - startNanos) / tickNanos - tick);
+            timeout.remainingRounds = ticksAway / buckets.length;
+            buckets[(int) ((tick + ticksAway) % buckets.length)].add(timeout);
+        }
+    }
+
+    private void expire(Queue<Timeout> bucket) {
+        Iterator<Timeout> it = bucket.iterator();
+        while (it.hasNext()) {
+            Timeout timeout = it.next();
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                continue;
+            }
+            it.remove();
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                Log.error("net", "timeout_task_failed", e);
+            }
+        }
+    }
+
+    private static final class Timeout {
+        private final Runnable task;
+        private final long deadlineNanos;
+        private long remainingRounds;
+
+        Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+}
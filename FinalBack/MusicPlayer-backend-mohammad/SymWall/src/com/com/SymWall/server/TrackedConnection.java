@@ -0,0 +1,19 @@
+package com.com.SymWall.server;
+
+// What ConnectionTimeouts needs to know about a client connection. Times are System.nanoTime() values.
+public interface TrackedConnection {
+
+    // Last complete message received or response written.
+    long lastActivityNanos();
+
+    // Since when an incomplete message has been sitting in the read buffer, 0 if none.
+    long partialReadSinceNanos();
+
+    // Since when output has been waiting to be written, 0 if none.
+    long pendingWriteSinceNanos();
+
+    boolean isOpen();
+
+    // Closes the connection; may be called from the timer thread.
+    void reap(String reason);
+}
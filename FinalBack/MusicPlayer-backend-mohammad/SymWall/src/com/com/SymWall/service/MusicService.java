@@ -1,10 +1,18 @@
 package com.com.SymWall.service;
 
+import com.com.SymWall.api.AudioStreamService;
+import com.com.SymWall.api.CatalogCache;
 import com.com.SymWall.model.Music;
 import com.com.SymWall.repository.MusicRepository;
+import com.com.SymWall.server.PushHub;
+import org.json.JSONObject;
 
 import java.util.List;
 
+/**
+ * Changes to the catalog go through here: once a write has gone through, the catalog snapshot is
+ * rebuilt and subscribed clients are told about it.
+ */
 public class MusicService {
     private final MusicRepository musicRepository;
 
@@ -13,7 +21,11 @@ public class MusicService {
     }
 
     public boolean addMusic(Music music) {
-        return musicRepository.save(music);
+        boolean changed = musicRepository.save(music);
+        if (changed) {
+            catalogChanged("added", music.getId());
+        }
+        return changed;
     }
 
     public Music getMusicById(String id) {
@@ -25,11 +37,29 @@ public class MusicService {
     }
 
     public boolean updateMusic(Music music) {
-        return musicRepository.update(music);
+        boolean changed = musicRepository.update(music);
+        if (changed) {
+            catalogChanged("updated", music.getId());
+            PushHub.get().publish("track:" + music.getId(), "track:" + music.getId(),
+                    new JSONObject().put("event", "track_updated").put("id", music.getId()).put("likes", music.getLikes()));
+        }
+        return changed;
     }
 
     public boolean deleteMusic(String id) {
-        return musicRepository.deleteById(id);
+        boolean changed = musicRepository.deleteById(id);
+        if (changed) {
+            catalogChanged("removed", id);
+        }
+        return changed;
+    }
+
+    // Several changes to one track while a client is behind collapse into the latest.
+    private static void catalogChanged(String op, String id) {
+        CatalogCache.invalidate();
+        AudioStreamService.invalidate(id);
+        PushHub.get().publish("catalog", "catalog:" + id,
+                new JSONObject().put("event", "catalog_changed").put("op", op).put("id", id));
     }
 }
 
@@ -1,55 +1,90 @@
 package com.com.SymWall.service;
 
+import com.com.SymWall.model.SubscriptionType;
 import com.com.SymWall.model.User;
-import com.com.SymWall.repository.UserRepository;
+import com.com.SymWall.model.UserManager;
+import com.com.SymWall.server.SessionTokens;
+import com.com.SymWall.util.PasswordHasher;
 
-import java.util.List;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
+// Account operations on the UserManager store, the same one the 8081 actions use.
 public class UserService {
-    private final UserRepository userRepository;
+    private final UserManager userManager;
+    private final SessionTokens sessionTokens;
+    // work that follows a hash runs here, never on the PasswordHasher pool or the common pool
+    private final Executor executor;
 
-    public UserService(UserRepository userRepository) {
-        this.userRepository = userRepository;
+    public UserService(UserManager userManager, SessionTokens sessionTokens, Executor executor) {
+        this.userManager = userManager;
+        this.sessionTokens = sessionTokens;
+        this.executor = executor;
     }
 
     public boolean signup(String username, String email, String passwordHash, String passwordSalt) {
-        if (userRepository.findByEmail(email) != null) return false;
         User user = new User(username, email, passwordHash, passwordSalt);
-        return userRepository.save(user);
+        return userManager.add(user) == UserManager.AddResult.ADDED;
     }
 
-    public boolean login(String email, String password) {
-        User user = userRepository.findByEmail(email);
-        return user != null && user.checkPassword(password);
+    /**
+     * Completes once the password has been checked on the PasswordHasher pool; fails with
+     * PasswordHasher.Busy when too many hashes are already queued.
+     */
+    public CompletableFuture<Boolean> login(String email, String password) {
+        User user = userManager.getUserByEmail(email);
+        if (user == null) return CompletableFuture.completedFuture(false);
+        return user.checkPasswordAsync(password);
     }
 
-    public List<User> getAllUsers() {
-        return userRepository.findAll();
-    }
-
-    public boolean changePassword(String email, String oldPassword, String newPassword) {
-        User user = userRepository.findByEmail(email);
-        if (user == null || !user.checkPassword(oldPassword)) return false;
-        user.changePassword(newPassword);
-        return userRepository.update(user);
+    /**
+     * Changes the password of a user. Both hashes run on the PasswordHasher
+     * pool; the store update and the token revocation run on this service's executor. Completes with
+     * false when the old password is wrong or was changed by someone else in the meantime.
+     */
+    public CompletableFuture<Boolean> changePassword(String email, String oldPassword, String newPassword) {
+        User user = userManager.getUserByEmail(email);
+        if (user == null) return CompletableFuture.completedFuture(false);
+        String checkedHash = user.getPasswordHash();
+        return user.checkPasswordAsync(oldPassword).thenCompose(matches -> {
+            if (!matches) return CompletableFuture.completedFuture(false);
+            String salt = PasswordHasher.get().newSalt();
+            return PasswordHasher.get().hashAsync(newPassword, salt).thenApplyAsync(hash -> {
+                boolean[] changed = new boolean[1];
+                User updated = userManager.update(email, current -> {
+                    if (!current.getPasswordHash().equals(checkedHash)) return null;
+                    current.setPasswordSalt(salt);
+                    current.setPasswordHash(hash);
+                    changed[0] = true;
+                    return current;
+                });
+                if (updated == null || !changed[0]) return false;
+                // tokens issued for the old password must not outlive it
+                sessionTokens.revoke(email);
+                return true;
+            }, executor);
+        });
     }
 
     public boolean addCredit(String email, double amount) {
-        User user = userRepository.findByEmail(email);
-        if (user == null) return false;
-        user.addCredit(amount);
-        return userRepository.update(user);
+        return userManager.update(email, user -> {
+            user.addCredit(amount);
+            return user;
+        }) != null;
     }
 
-    public boolean upgradeSubscription(String email, String newPlan, java.time.LocalDateTime expireAt) {
-        User user = userRepository.findByEmail(email);
-        if (user == null) return false;
+    public boolean upgradeSubscription(String email, String newPlan, LocalDateTime expireAt) {
+        SubscriptionType plan;
         try {
-            user.upgradeSubscription(com.com.SymWall.model.SubscriptionType.valueOf(newPlan), expireAt);
+            plan = SubscriptionType.valueOf(newPlan);
         } catch (IllegalArgumentException e) {
             return false;
         }
-        return userRepository.update(user);
+        return userManager.update(email, user -> {
+            user.upgradeSubscription(plan, expireAt);
+            return user;
+        }) != null;
     }
 
 }
@@ -23,7 +23,7 @@ package com.com.SymWall.util;
 
 public class DB {
 
-    private static final String URL = "jdbc:mysql://localhost:3306/music_db";
+    private static final String URL = "jdbc:mysql://localhost:3306/music_db?useCursorFetch=true";
     private static final String USER = "root";
     private static final String PASS = "6696";
 
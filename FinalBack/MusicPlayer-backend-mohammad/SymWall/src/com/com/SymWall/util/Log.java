@@ -0,0 +1,254 @@
+package com.com.SymWall.util;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Structured logging that stays off the request path. Callers only check the level and drop an event
+ * into a lock-free ring buffer; one background thread formats and writes it. When the buffer is full
+ * events are dropped and counted rather than slowing requests down. A shutdown hook writes out what is
+ * still buffered, waiting briefly for events logged by other shutdown hooks.
+ *
+ * Events are {@code category event key=value ...}. Levels are set per category with
+ * {@code -Dsymwall.log.level.<category>=DEBUG} (default {@code -Dsymwall.log.level}, INFO).
+ * Secrets are always masked and request/response bodies passed through {@link #payload(String)}
+ * are truncated unless {@code -Dsymwall.log.payloads=full}.
+ */
+public final class Log {
+
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static final int CAPACITY = 1 << 14;
+    private static final int MASK = CAPACITY - 1;
+    private static final int MAX_PAYLOAD_CHARS = 256;
+    private static final Set<String> SECRET_KEYS = Set.of(
+            "password", "passwordHash", "passwordSalt", "salt", "nonce", "token", "sessionToken");
+    private static final Pattern SECRET_FIELDS = Pattern.compile(
+            "\"(password|passwordHash|passwordSalt|salt|nonce|token|sessionToken)\"\\s*:\\s*\"[^\"]*\"");
+
+    private static final Level DEFAULT_LEVEL = Level.valueOf(System.getProperty("symwall.log.level", "INFO"));
+    private static final boolean FULL_PAYLOADS = "full".equals(System.getProperty("symwall.log.payloads"));
+    private static final Map<String, Level> CATEGORY_LEVELS = new ConcurrentHashMap<>();
+
+    private static final AtomicReferenceArray<Event> SLOTS = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong TAIL = new AtomicLong();
+    private static volatile long head = 0;
+
+    private static final LongAdder PUBLISHED = new LongAdder();
+    private static final LongAdder DROPPED = new LongAdder();
+
+    // The writer thread and the shutdown hook both consume the ring; only the holder of this lock may.
+    private static final ReentrantLock WRITER_LOCK = new ReentrantLock();
+    private static final Writer OUT = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), 64 * 1024);
+    private static final StringBuilder LINE = new StringBuilder(256);
+    private static final long EXIT_QUIET_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long EXIT_MAX_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    static {
+        Thread drainer = new Thread(Log::drain, "log-writer");
+        drainer.setDaemon(true);
+        drainer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::drainAtExit, "log-shutdown"));
+    }
+
+    private Log() {
+    }
+
+    public static void debug(String category, String event, Object... keyValues) {
+        log(Level.DEBUG, category, event, null, keyValues);
+    }
+
+    public static void info(String category, String event, Object... keyValues) {
+        log(Level.INFO, category, event, null, keyValues);
+    }
+
+    public static void warn(String category, String event, Object... keyValues) {
+        log(Level.WARN, category, event, null, keyValues);
+    }
+
+    public static void error(String category, String event, Throwable error, Object... keyValues) {
+        log(Level.ERROR, category, event, error, keyValues);
+    }
+
+    // For high-volume events: roughly one in {@code oneIn} calls is kept.
+    public static void sampled(int oneIn, Level level, String category, String event, Object... keyValues) {
+        if (enabled(level, category) && ThreadLocalRandom.current().nextInt(oneIn) == 0) {
+            publish(new Event(level, category, event, null, keyValues, oneIn));
+        }
+    }
+
+    public static boolean enabled(Level level, String category) {
+        Level threshold = CATEGORY_LEVELS.computeIfAbsent(category, c -> {
+            String configured = System.getProperty("symwall.log.level." + c);
+            return configured != null ? Level.valueOf(configured) : DEFAULT_LEVEL;
+        });
+        return level.compareTo(threshold) >= 0;
+    }
+
+    /**
+     * Wraps a message body for logging; secrets are masked and the text truncated when it is written,
+     * on the log thread.
+     */
+    public static Object payload(String body) {
+        return new Payload(body);
+    }
+
+    public static long published() { return PUBLISHED.sum(); }
+    public static long dropped() { return DROPPED.sum(); }
+
+    private static void log(Level level, String category, String event, Throwable error, Object[] keyValues) {
+        if (enabled(level, category)) {
+            publish(new Event(level, category, event, error, keyValues, 1));
+        }
+    }
+
+    private static void publish(Event event) {
+        while (true) {
+            long tail = TAIL.get();
+            if (tail - head >= CAPACITY) {
+                DROPPED.increment();
+                return;
+            }
+            if (TAIL.compareAndSet(tail, tail + 1)) {
+                SLOTS.set((int) (tail & MASK), event);
+                PUBLISHED.increment();
+                return;
+            }
+        }
+    }
+
+    private static void drain() {
+        while (true) {
+            if (!writeBuffered()) {
+                LockSupport.parkNanos(1_000_000);
+            }
+        }
+    }
+
+    // Keeps writing until nothing has been logged for a short while, so other hooks' last events get out too.
+    private static void drainAtExit() {
+        long start = System.nanoTime();
+        long lastWrite = start;
+        while (System.nanoTime() - lastWrite < EXIT_QUIET_NANOS && System.nanoTime() - start < EXIT_MAX_NANOS) {
+            if (writeBuffered()) {
+                lastWrite = System.nanoTime();
+            } else {
+                LockSupport.parkNanos(5_000_000);
+            }
+        }
+    }
+
+    // Writes every event in the ring and flushes; false if there was none.
+    private static boolean writeBuffered() {
+        WRITER_LOCK.lock();
+        try {
+            boolean wrote = false;
+            int index;
+            Event event;
+            while ((event = SLOTS.get(index = (int) (head & MASK))) != null) {
+                SLOTS.set(index, null);
+                head = head + 1;
+                wrote = true;
+                try {
+                    LINE.setLength(0);
+                    event.format(LINE);
+                    OUT.write(LINE.toString());
+                } catch (IOException | RuntimeException ignored) {
+                    // a broken event or stdout must never kill the writer
+                }
+            }
+            if (wrote) {
+                try {
+                    OUT.flush();
+                } catch (IOException ignored) {
+                    // nowhere left to report it
+                }
+            }
+            return wrote;
+        } finally {
+            WRITER_LOCK.unlock();
+        }
+    }
+
+    private static String redact(String body) {
+        String masked = SECRET_FIELDS.matcher(body).replaceAll("\"$1\":\"***\"");
+        if (FULL_PAYLOADS || masked.length() <= MAX_PAYLOAD_CHARS) {
+            return masked;
+        }
+        return masked.substring(0, MAX_PAYLOAD_CHARS) + "...(+" + (masked.length() - MAX_PAYLOAD_CHARS) + " chars)";
+    }
+
+    private static final class Payload {
+        private final String body;
+
+        Payload(String body) {
+            this.body = body;
+        }
+
+        @Override
+        public String toString() {
+            return body == null ? "null" : redact(body);
+        }
+    }
+
+    private static final class Event {
+        private final long timestamp = System.currentTimeMillis();
+        private final String thread = Thread.currentThread().getName();
+        private final Level level;
+        private final String category;
+        private final String name;
+        private final Throwable error;
+        private final Object[] keyValues;
+        private final int sampleRate;
+
+        Event(Level level, String category, String name, Throwable error, Object[] keyValues, int sampleRate) {
+            this.level = level;
+            this.category = category;
+            this.name = name;
+            this.error = error;
+            this.keyValues = keyValues;
+            this.sampleRate = sampleRate;
+        }
+
+        void format(StringBuilder out) {
+            out.append(Instant.ofEpochMilli(timestamp)).append(' ').append(level).append(' ')
+                    .append(category).append(' ').append(name).append(" thread=").append(thread);
+            for (int i = 0; i + 1 < keyValues.length; i += 2) {
+                String key = String.valueOf(keyValues[i]);
+                out.append(' ').append(key).append('=');
+                out.append(SECRET_KEYS.contains(key) ? "***" : String.valueOf(keyValues[i + 1]));
+            }
+            if (sampleRate > 1) {
+                out.append(" sampled=1/").append(sampleRate);
+            }
+            if (error != null) {
+                out.append(" error=\"").append(error).append('"');
+                if (level == Level.ERROR) {
+                    StringWriter trace = new StringWriter();
+                    error.printStackTrace(new PrintWriter(trace));
+                    out.append(System.lineSeparator()).append(trace);
+                }
+            }
+            out.append(System.lineSeparator());
+        }
+    }
+}
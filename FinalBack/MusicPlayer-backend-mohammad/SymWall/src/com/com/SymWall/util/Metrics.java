@@ -0,0 +1,56 @@
+package com.com.SymWall.util;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide registry of latency histograms and gauges, rendered in the Prometheus text format.
+ * Timer names look like {@code action.login_request} or {@code db.music.findCatalogPage}; look them up
+ * once and keep the reference, the registry is not meant to be hit on every call.
+ */
+public final class Metrics {
+
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private static final Map<String, LatencyHistogram> TIMERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    public static LatencyHistogram timer(String name) {
+        return TIMERS.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    // name uses underscores, e.g. server_connections; a later registration replaces an earlier one.
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    public static String render() {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# TYPE symwall_latency_seconds summary\n");
+        for (Map.Entry<String, LatencyHistogram> entry : TIMERS.entrySet()) {
+            String op = entry.getKey();
+            LatencyHistogram.Snapshot snapshot = entry.getValue().snapshot();
+            for (double q : QUANTILES) {
+                out.append("symwall_latency_seconds{op=\"").append(op).append("\",quantile=\"").append(q).append("\"} ")
+                        .append(seconds(snapshot.percentile(q))).append('\n');
+            }
+            out.append("symwall_latency_seconds_sum{op=\"").append(op).append("\"} ").append(seconds(snapshot.totalNanos())).append('\n');
+            out.append("symwall_latency_seconds_count{op=\"").append(op).append("\"} ").append(snapshot.count()).append('\n');
+            out.append("symwall_latency_max_seconds{op=\"").append(op).append("\"} ").append(seconds(snapshot.maxNanos())).append('\n');
+            out.append("symwall_errors_total{op=\"").append(op).append("\"} ").append(snapshot.errors()).append('\n');
+        }
+        for (Map.Entry<String, LongSupplier> entry : GAUGES.entrySet()) {
+            out.append("symwall_").append(entry.getKey()).append(' ').append(entry.getValue().getAsLong()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+}
@@ -0,0 +1,136 @@
+package com.com.SymWall.util;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PBKDF2 password hashing on its own pool. One hash is tens of milliseconds of pure CPU, so the
+ * pool has one thread per core and a bounded queue: when it is full the call fails at once with
+ * {@link Busy} instead of piling up work, and request threads never do the hashing themselves.
+ * <p>
+ * {@code SecretKeyFactory} is not thread-safe, so each thread keeps its own; salts come from one
+ * shared {@code SecureRandom}, which is.
+ */
+public final class PasswordHasher {
+
+    private static final int ITERATIONS = 65536;
+    private static final int KEY_LENGTH = 512;
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 64;
+
+    private static final class Holder {
+        private static final PasswordHasher INSTANCE = new PasswordHasher(
+                Integer.getInteger("symwall.password.threads", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("symwall.password.queue", 64));
+    }
+
+    /** Thrown (through the returned future) when the hashing queue is full. */
+    public static final class Busy extends RejectedExecutionException {
+        private static final long serialVersionUID = 1L;
+
+        Busy() {
+            super("Password hashing queue is full");
+        }
+    }
+
+    private static final ThreadLocal<SecretKeyFactory> FACTORIES = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            // every JVM ships PBKDF2WithHmacSHA256
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final ThreadPoolExecutor pool;
+    private final SecureRandom random = new SecureRandom();
+    private final LatencyHistogram hashTimer = Metrics.timer("password.hash");
+    private final LatencyHistogram queueTimer = Metrics.timer("password.queue_wait");
+    private final LongAdder rejected = new LongAdder();
+
+    private PasswordHasher(int threads, int queueCapacity) {
+        AtomicInteger threadId = new AtomicInteger();
+        pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "password-hash-" + threadId.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public static PasswordHasher get() {
+        return Holder.INSTANCE;
+    }
+
+    public String newSalt() {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        return Base64.getEncoder().encodeToString(salt);
+    }
+
+    /**
+     * Hashes on the calling thread. Prefer {@link #hashAsync} from request threads.
+     */
+    public String hash(String password, String salt) {
+        long start = System.nanoTime();
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt.getBytes(StandardCharsets.UTF_8), ITERATIONS, KEY_LENGTH);
+        try {
+            return Base64.getEncoder().encodeToString(FACTORIES.get().generateSecret(spec).getEncoded());
+        } catch (GeneralSecurityException e) {
+            hashTimer.error();
+            throw new IllegalStateException("Error while hashing a password", e);
+        } finally {
+            spec.clearPassword();
+            hashTimer.recordSince(start);
+        }
+    }
+
+    public CompletableFuture<String> hashAsync(String password, String salt) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        long queued = System.nanoTime();
+        try {
+            pool.execute(() -> {
+                queueTimer.recordSince(queued);
+                try {
+                    result.complete(hash(password, salt));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            queueTimer.error();
+            result.completeExceptionally(new Busy());
+        }
+        return result;
+    }
+
+    public CompletableFuture<Boolean> verifyAsync(String password, String salt, String expectedHash) {
+        return hashAsync(password, salt).thenApply(hash -> MessageDigest.isEqual(
+                hash.getBytes(StandardCharsets.US_ASCII), expectedHash.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    public int queued() {
+        return pool.getQueue().size();
+    }
+
+    public int active() {
+        return pool.getActiveCount();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+}
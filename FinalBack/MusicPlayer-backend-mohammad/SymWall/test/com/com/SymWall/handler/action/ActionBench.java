@@ -0,0 +1,48 @@
+package com.com.SymWall.handler.action;
+
+import com.com.SymWall.handler.RequestHandler;
+import com.com.SymWall.model.UserManager;
+import com.com.SymWall.repository.MusicRepository;
+import com.com.SymWall.server.NonceStore;
+import com.com.SymWall.server.SessionTokens;
+import org.json.JSONObject;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Runs one action through the full dispatcher in a loop and prints time and bytes allocated per call.
+ *
+ * Usage: ActionBench [action] [dataJson] [iterations]
+ * Example: ActionBench get_user_status "{\"email\":\"test@test.com\"}" 200000
+ */
+public class ActionBench {
+
+    public static void main(String[] args) {
+        String action = args.length > 0 ? args[0] : "ping";
+        JSONObject data = new JSONObject(args.length > 1 ? args[1] : "{}");
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+
+        RequestHandler handler = new RequestHandler(new UserManager(), new NonceStore(60_000, 100_000, 4),
+                new SessionTokens(UserManager.DATA_DIR, 3_600_000), new MusicRepository(), Runnable::run);
+        JSONObject request = new JSONObject().put("action", action).put("data", data).put("requestId", 1);
+        System.out.println("Sample response: " + handler.handleRequest(request));
+
+        // warm-up so the JIT has compiled the path being measured
+        for (int i = 0; i < Math.min(iterations, 20_000); i++) {
+            handler.handleRequest(request);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        int length = 0;
+        for (int i = 0; i < iterations; i++) {
+            length += handler.handleRequest(request).length();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+
+        System.out.printf("%s: %d calls, %.0f ns/op, %d bytes/op allocated (%d chars out)%n",
+                action, iterations, (double) elapsed / iterations, allocated / iterations, length);
+    }
+}
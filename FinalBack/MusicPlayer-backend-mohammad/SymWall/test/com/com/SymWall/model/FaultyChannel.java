@@ -0,0 +1,146 @@
+package com.com.SymWall.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A journal file whose next write or fsync can be made to fail. A failing write still puts half of
+ * its first buffer on disk first, like a write cut short by a full disk. The next write can also be
+ * held until a latch opens, to look at the store while a record is still on its way to disk.
+ */
+final class FaultyChannel extends FileChannel {
+
+    volatile boolean failNextWrite = false;
+    volatile boolean failNextForce = false;
+    volatile boolean failTruncate = false;
+    volatile CountDownLatch holdNextWrite = null;
+
+    private final FileChannel delegate;
+
+    private FaultyChannel(FileChannel delegate) {
+        this.delegate = delegate;
+    }
+
+    static FaultyChannel open(Path file) throws IOException {
+        return new FaultyChannel(UserJournal.APPEND.open(file));
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        CountDownLatch hold = holdNextWrite;
+        if (hold != null) {
+            holdNextWrite = null;
+            try {
+                hold.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while held", e);
+            }
+        }
+        if (failNextWrite) {
+            failNextWrite = false;
+            ByteBuffer first = srcs[offset];
+            ByteBuffer half = first.duplicate();
+            half.limit(half.position() + half.remaining() / 2);
+            delegate.write(half);
+            throw new IOException("injected write failure");
+        }
+        return delegate.write(srcs, offset, length);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return (int) write(new ByteBuffer[]{src}, 0, 1);
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        if (failNextForce) {
+            failNextForce = false;
+            throw new IOException("injected fsync failure");
+        }
+        delegate.force(metaData);
+    }
+
+    @Override
+    public FileChannel truncate(long size) throws IOException {
+        if (failTruncate) {
+            throw new IOException("injected truncate failure");
+        }
+        delegate.truncate(size);
+        return this;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        return delegate.read(dst);
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        return delegate.read(dsts, offset, length);
+    }
+
+    @Override
+    public long position() throws IOException {
+        return delegate.position();
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+        delegate.position(newPosition);
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return delegate.size();
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        return delegate.transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+        return delegate.transferFrom(src, position, count);
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        return delegate.read(dst, position);
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) throws IOException {
+        return delegate.write(src, position);
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        return delegate.map(mode, position, size);
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        return delegate.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        return delegate.tryLock(position, size, shared);
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,67 @@
+package com.com.SymWall.model;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes users through the journal from several threads, halts that UserManager without a clean
+ * shutdown (as after a crash), opens a second one on the same directory and times the recovery.
+ * Add -Dsymwall.users.journalCompactBytes=... to see compaction kick in.
+ *
+ * Usage: JournalRecoveryBench [users] [updatesPerUser] [threads]
+ */
+public class JournalRecoveryBench {
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int updates = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        Path dir = Files.createTempDirectory("symwall-journal");
+
+        UserManager writer = new UserManager(dir.toString());
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        long start = System.nanoTime();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < users) {
+                    User user = new User("user" + i, "user" + i + "@bench.local", "hash" + i, "salt" + i);
+                    if (!writer.addUser(user)) {
+                        failed.incrementAndGet();
+                    }
+                    for (int u = 0; u < updates; u++) {
+                        if (writer.update(user.getEmail(), current -> {
+                            current.addCredit(1);
+                            return current;
+                        }) == null) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            thread.start();
+            workers.add(thread);
+        }
+        for (Thread thread : workers) {
+            thread.join();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        long writes = (long) users * (1 + updates);
+        System.out.printf("writes=%d failed=%d elapsed=%dms throughput=%.0f writes/s fsyncs=%d records/fsync=%.1f compactions=%d%n",
+                writes, failed.get(), elapsedNanos / 1_000_000, writes / (elapsedNanos / 1e9),
+                writer.journalFsyncs(), writer.journalRecords() / Math.max(1.0, writer.journalFsyncs()),
+                writer.compactions());
+
+        writer.halt();
+        UserManager recovered = new UserManager(dir.toString());
+        User sample = recovered.getUserByEmail("user" + (users - 1) + "@bench.local");
+        System.out.printf("recovery=%.1fms journalBytes=%d sampleCredit=%s%n",
+                recovered.lastRecoveryNanos() / 1e6, recovered.journalBytes(),
+                sample != null ? sample.getCredit() : "missing");
+    }
+}
@@ -0,0 +1,125 @@
+package com.com.SymWall.model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Checks what {@link UserJournal} leaves on disk when writes fail and what a restart replays from it.
+ * Exits with status 1 if any check fails.
+ *
+ * Usage: UserJournalCheck
+ */
+public class UserJournalCheck {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        failedWriteIsCutOff();
+        failedFsyncPoisons();
+        failedUndoPoisons();
+        unreadableLineIsSkipped();
+        System.out.println(failures == 0 ? "all journal checks passed" : failures + " journal check(s) failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    // A write that dies halfway through a batch must not leave a torn record for later batches to follow.
+    private static void failedWriteIsCutOff() throws Exception {
+        Path dir = Files.createTempDirectory("symwall-journal-check");
+        FaultyChannel[] channel = new FaultyChannel[1];
+        UserJournal journal = open(dir, channel);
+        check("first record is durable", durable(journal.append(UserJournal.signup(user(1)))));
+        channel[0].failNextWrite = true;
+        check("torn batch fails", !durable(journal.append(UserJournal.signup(user(2)))));
+        check("journal keeps going after an undone write", durable(journal.append(UserJournal.signup(user(3)))));
+        check("journal is not poisoned", !journal.poisoned());
+        journal.close();
+        check("replay has exactly the acknowledged records", replay(dir).equals(List.of(email(1), email(3))));
+    }
+
+    // After a failed fsync nothing more may be acknowledged.
+    private static void failedFsyncPoisons() throws Exception {
+        Path dir = Files.createTempDirectory("symwall-journal-check");
+        FaultyChannel[] channel = new FaultyChannel[1];
+        UserJournal journal = open(dir, channel);
+        check("first record is durable", durable(journal.append(UserJournal.signup(user(1)))));
+        channel[0].failNextForce = true;
+        check("batch with failed fsync fails", !durable(journal.append(UserJournal.signup(user(2)))));
+        check("journal is poisoned", journal.poisoned());
+        check("appends after the fsync failure fail", !durable(journal.append(UserJournal.signup(user(3)))));
+        journal.close();
+        List<String> replayed = replay(dir);
+        check("replay keeps the acknowledged record", replayed.contains(email(1)));
+        check("replay has nothing appended after the failure", !replayed.contains(email(3)));
+    }
+
+    // A torn batch that cannot be cut off must stop the journal rather than be followed by good records.
+    private static void failedUndoPoisons() throws Exception {
+        Path dir = Files.createTempDirectory("symwall-journal-check");
+        FaultyChannel[] channel = new FaultyChannel[1];
+        UserJournal journal = open(dir, channel);
+        check("first record is durable", durable(journal.append(UserJournal.signup(user(1)))));
+        channel[0].failTruncate = true;
+        channel[0].failNextWrite = true;
+        check("torn batch fails", !durable(journal.append(UserJournal.signup(user(2)))));
+        check("journal is poisoned", journal.poisoned());
+        check("appends after the torn batch fail", !durable(journal.append(UserJournal.signup(user(3)))));
+        journal.close();
+        check("replay has the acknowledged record only", replay(dir).equals(List.of(email(1))));
+    }
+
+    // A bad line in the middle is skipped; the records after it were acknowledged and must survive.
+    private static void unreadableLineIsSkipped() throws Exception {
+        Path dir = Files.createTempDirectory("symwall-journal-check");
+        Path file = dir.resolve("users.journal");
+        String content = UserJournal.signup(user(1)) + "\n"
+                + "{\"op\":\"signup\",\"user\":{\"email\n"
+                + UserJournal.signup(user(2)) + "\n"
+                + "{\"op\":\"delete\",\"em";
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        check("records after an unreadable line are replayed", replay(dir).equals(List.of(email(1), email(2))));
+        check("only the torn tail is trimmed",
+                Files.readString(file, StandardCharsets.UTF_8).equals(content.substring(0, content.lastIndexOf('\n') + 1)));
+    }
+
+    private static UserJournal open(Path dir, FaultyChannel[] channel) throws IOException {
+        UserJournal journal = new UserJournal(dir, Long.MAX_VALUE, () -> { }, file -> channel[0] = FaultyChannel.open(file));
+        journal.start();
+        return journal;
+    }
+
+    private static List<String> replay(Path dir) throws IOException {
+        List<String> emails = new ArrayList<>();
+        new UserJournal(dir, Long.MAX_VALUE, () -> { }).replay(record -> emails.add(record.getJSONObject("user").getString("email")));
+        return emails;
+    }
+
+    private static boolean durable(CompletableFuture<Void> future) {
+        try {
+            future.join();
+            return true;
+        } catch (CompletionException e) {
+            return false;
+        }
+    }
+
+    private static User user(int i) {
+        return new User("user" + i, email(i), "hash" + i, "salt" + i);
+    }
+
+    private static String email(int i) {
+        return "user" + i + "@check.local";
+    }
+
+    private static void check(String what, boolean ok) {
+        if (!ok) {
+            failures++;
+        }
+        System.out.println((ok ? "ok   " : "FAIL ") + what);
+    }
+}
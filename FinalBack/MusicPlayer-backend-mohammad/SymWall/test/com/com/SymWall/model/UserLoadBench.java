@@ -0,0 +1,109 @@
+package com.com.SymWall.model;
+
+import org.json.JSONArray;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares the old users.json load (whole file into one JSONArray) with {@link UsersFileLoader}
+ * for several file sizes, reporting load time and peak heap. Run with a fixed -Xmx so the peaks
+ * are comparable.
+ *
+ * Usage: UserLoadBench [userCounts, comma separated]
+ * Example: java -Xmx2g ... UserLoadBench 10000,100000,1000000
+ */
+public class UserLoadBench {
+
+    private interface Loader {
+        Map<String, User> load(Path file) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] sizes = (args.length > 0 ? args[0] : "10000,100000,500000").split(",");
+        Path dir = Files.createTempDirectory("symwall-load");
+        System.out.printf("%10s %8s %-10s %10s %12s%n", "users", "fileMB", "loader", "ms", "peakHeapMB");
+        for (String size : sizes) {
+            int users = Integer.parseInt(size.trim());
+            Path file = dir.resolve("users-" + users + ".json");
+            write(file, users);
+            double fileMb = Files.size(file) / 1e6;
+            run(users, fileMb, "full", file, UserLoadBench::loadFull);
+            run(users, fileMb, "streaming", file, UserLoadBench::loadStreaming);
+            Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    private static void run(int users, double fileMb, String name, Path file, Loader loader) {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        long start = System.nanoTime();
+        try {
+            Map<String, User> loaded = loader.load(file);
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%10d %8.1f %-10s %10d %12.1f%n", users, fileMb, name, elapsedMs, peakHeapBytes() / 1e6);
+            if (loaded.size() != users) {
+                System.out.println("  loaded " + loaded.size() + " users, expected " + users);
+            }
+        } catch (OutOfMemoryError | IOException e) {
+            System.out.printf("%10d %8.1f %-10s %10s %12s%n", users, fileMb, name, "failed", e.getClass().getSimpleName());
+        }
+    }
+
+    private static long peakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    // What UserManager.loadUsers did before the streaming loader.
+    private static Map<String, User> loadFull(Path file) throws IOException {
+        Map<String, User> users = new HashMap<>();
+        JSONArray jsonArray = new JSONArray(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        for (int i = 0; i < jsonArray.length(); i++) {
+            User user = User.fromJSONObject(jsonArray.getJSONObject(i));
+            user.checkAndDowngradeIfExpired();
+            users.put(user.getEmail(), user);
+        }
+        return users;
+    }
+
+    private static Map<String, User> loadStreaming(Path file) throws IOException {
+        Map<String, User> users = new HashMap<>();
+        new UsersFileLoader(ForkJoinPool.commonPool()).load(file, user -> users.put(user.getEmail(), user));
+        return users;
+    }
+
+    // Same compact format UserManager writes, one user at a time.
+    private static void write(Path file, int users) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write('[');
+            for (int i = 0; i < users; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                User user = new User("user" + i, "user" + i + "@bench.local",
+                        "c2FtcGxlLXBhc3N3b3JkLWhhc2gtZm9yLXVzZXI" + i, "c2FsdA" + i);
+                user.setCredit(i % 100);
+                writer.write(user.toJSONObject().toString());
+            }
+            writer.write(']');
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.com.SymWall.model;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Checks that a {@link UserManager} change whose journal record fails leaves neither the map, the
+ * indexes, a snapshot nor the next start with that change, and that a store it cannot read fully does
+ * not start.
+ * Exits with status 1 if any check fails.
+ *
+ * Usage: UserStoreCheck
+ */
+public class UserStoreCheck {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        failedWritesAreUndone();
+        poisonedJournalRefusesChanges();
+        snapshotHasOnlyAcknowledgedChanges();
+        unreadableSnapshotStopsStart();
+        System.out.println(failures == 0 ? "all store checks passed" : failures + " store check(s) failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void failedWritesAreUndone() throws Exception {
+        Path dir = Files.createTempDirectory("symwall-store-check");
+        FaultyChannel[] channel = new FaultyChannel[1];
+        UserManager store = new UserManager(dir.toString(), file -> channel[0] = FaultyChannel.open(file));
+
+        User kept = new User("Kept", "kept@check.local", "hash", "salt");
+        check("signup is stored", store.add(kept) == UserManager.AddResult.ADDED);
+        check("second signup for the email exists", store.add(kept) == UserManager.AddResult.EXISTS);
+
+        channel[0].failNextWrite = true;
+        User lost = new User("Lost", "lost@check.local", "hash", "salt");
+        check("failed signup reports NOT_SAVED", store.add(lost) == UserManager.AddResult.NOT_SAVED);
+        check("failed signup is not in the store", store.getUserByEmail(lost.getEmail()) == null);
+        check("failed signup is not indexed by id", store.getUserById(lost.getId()) == null);
+        check("failed signup is not indexed by name", store.findByUsername("lost").isEmpty());
+        check("retried signup is stored", store.add(lost) == UserManager.AddResult.ADDED);
+
+        channel[0].failNextWrite = true;
+        User unchanged = store.update(kept.getEmail(), user -> {
+            user.setSubscription(SubscriptionType.PREMIUM_1_MONTH);
+            user.addCredit(5);
+            return user;
+        });
+        User current = store.getUserByEmail(kept.getEmail());
+        check("failed update reports null", unchanged == null);
+        check("failed update is not in the store", current.getCredit() == 0 && current.getSubscription() == SubscriptionType.STANDARD);
+        check("failed update is not indexed", store.findBySubscription(SubscriptionType.PREMIUM_1_MONTH).isEmpty()
+                && store.findBySubscription(SubscriptionType.STANDARD).size() == 2);
+
+        channel[0].failNextWrite = true;
+        check("failed delete reports false", !store.deleteUser(kept.getEmail()));
+        check("failed delete keeps the user", store.getUserByEmail(kept.getEmail()) != null);
+        check("failed delete keeps the indexes", store.getUserById(kept.getId()) != null
+                && store.findByUsername("KEPT").size() == 1);
+
+        store.halt();
+        UserManager restarted = new UserManager(dir.toString());
+        check("restart has both users", restarted.size() == 2);
+        User recovered = restarted.getUserByEmail(kept.getEmail());
+        check("restart has no failed update", recovered != null && recovered.getCredit() == 0);
+        restarted.halt();
+    }
+
+    private static void poisonedJournalRefusesChanges() throws Exception {
+        Path dir = Files.createTempDirectory("symwall-store-check");
+        FaultyChannel[] channel = new FaultyChannel[1];
+        UserManager store = new UserManager(dir.toString(), file -> channel[0] = FaultyChannel.open(file));
+
+        channel[0].failNextForce = true;
+        User first = new User("First", "first@check.local", "hash", "salt");
+        check("signup with failed fsync reports NOT_SAVED", store.add(first) == UserManager.AddResult.NOT_SAVED);
+        check("journal is poisoned", store.journalPoisoned());
+        User second = new User("Second", "second@check.local", "hash", "salt");
+        check("signup after poisoning reports NOT_SAVED", store.add(second) == UserManager.AddResult.NOT_SAVED);
+        check("store is empty", store.size() == 0);
+        store.halt();
+    }
+
+    // A change whose record is still on its way to disk is already in the map but must not reach a snapshot.
+    private static void snapshotHasOnlyAcknowledgedChanges() throws Exception {
+        Path dir = Files.createTempDirectory("symwall-store-check");
+        FaultyChannel[] channel = new FaultyChannel[1];
+        UserManager store = new UserManager(dir.toString(), file -> channel[0] = FaultyChannel.open(file));
+
+        User kept = new User("Kept", "kept@check.local", "hash", "salt");
+        check("signup is stored", store.add(kept) == UserManager.AddResult.ADDED);
+
+        CountDownLatch release = new CountDownLatch(1);
+        channel[0].holdNextWrite = release;
+        channel[0].failNextWrite = true;
+        User held = new User("Held", "held@check.local", "hash", "salt");
+        CompletableFuture<UserManager.AddResult> result = CompletableFuture.supplyAsync(() -> store.add(held));
+        while (store.getUserByEmail(held.getEmail()) == null) {
+            Thread.sleep(1);
+        }
+        store.compactNow();
+        String snapshot = Files.readString(dir.resolve("users.json"));
+        check("snapshot has the acknowledged signup", snapshot.contains(kept.getEmail()));
+        check("snapshot leaves out the signup in flight", !snapshot.contains(held.getEmail()));
+
+        release.countDown();
+        check("held signup reports NOT_SAVED", result.get() == UserManager.AddResult.NOT_SAVED);
+        store.halt();
+        UserManager restarted = new UserManager(dir.toString());
+        check("restart has only the acknowledged signup", restarted.size() == 1
+                && restarted.getUserByEmail(held.getEmail()) == null);
+        restarted.halt();
+    }
+
+    private static void unreadableSnapshotStopsStart() throws Exception {
+        Path dir = Files.createTempDirectory("symwall-store-check");
+        Files.writeString(dir.resolve("users.json"), "[{\"email\":\"cut@check.local\",\"username\":");
+        boolean refused;
+        try {
+            new UserManager(dir.toString()).halt();
+            refused = false;
+        } catch (IllegalStateException e) {
+            refused = true;
+        }
+        check("unreadable users.json stops the start", refused);
+        check("unreadable users.json is left alone", Files.readString(dir.resolve("users.json")).startsWith("[{"));
+    }
+
+    private static void check(String what, boolean ok) {
+        if (!ok) {
+            failures++;
+        }
+        System.out.println((ok ? "ok   " : "FAIL ") + what);
+    }
+}
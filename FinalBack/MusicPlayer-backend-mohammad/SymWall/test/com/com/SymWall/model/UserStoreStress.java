@@ -0,0 +1,91 @@
+package com.com.SymWall.model;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mixed getUserByEmail / update load on one UserManager with 1, 2, 4, ... threads. Prints the
+ * throughput for each thread count and checks that no credit increment was lost. Every update is
+ * journaled, so put the data directory on tmpfs (e.g. /dev/shm) to measure the store rather than
+ * the disk's fsync rate.
+ *
+ * Usage: UserStoreStress [dataDir] [users] [opsPerThread] [maxThreads] [writePercent]
+ * Example: UserStoreStress /dev/shm/symwall-stress 10000 200000 16 10
+ */
+public class UserStoreStress {
+
+    public static void main(String[] args) throws Exception {
+        String dataDir = args.length > 0 ? args[0] : Files.createTempDirectory("symwall-stress").toString();
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int opsPerThread = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+        int maxThreads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors() * 2;
+        int writePercent = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+        UserManager store = new UserManager(dataDir);
+        AtomicInteger nextUser = new AtomicInteger();
+        runThreads(16, () -> {
+            int i;
+            while ((i = nextUser.getAndIncrement()) < users) {
+                store.addUser(new User("stress" + i, email(i), "hash", "salt"));
+            }
+        });
+        double baseCredit = totalCredit(store, users);
+
+        LongAdder writes = new LongAdder();
+        double single = 0;
+        System.out.printf("%8s %14s %8s %8s%n", "threads", "ops/s", "speedup", "lost");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            long start = System.nanoTime();
+            runThreads(threads, () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int op = 0; op < opsPerThread; op++) {
+                    String email = email(random.nextInt(users));
+                    if (random.nextInt(100) < writePercent) {
+                        store.update(email, user -> {
+                            user.addCredit(1);
+                            return user;
+                        });
+                        writes.increment();
+                    } else {
+                        store.getUserByEmail(email);
+                    }
+                }
+            });
+            double opsPerSecond = (double) threads * opsPerThread / ((System.nanoTime() - start) / 1e9);
+            if (threads == 1) {
+                single = opsPerSecond;
+            }
+            long lost = Math.round(baseCredit + writes.sum() - totalCredit(store, users));
+            System.out.printf("%8d %14.0f %7.2fx %8d%n", threads, opsPerSecond, opsPerSecond / single, lost);
+        }
+        store.halt();
+    }
+
+    private static String email(int i) {
+        return "stress" + i + "@bench.local";
+    }
+
+    private static double totalCredit(UserManager store, int users) {
+        double total = 0;
+        for (int i = 0; i < users; i++) {
+            total += store.getUserByEmail(email(i)).getCredit();
+        }
+        return total;
+    }
+
+    private static void runThreads(int count, Runnable body) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < count; t++) {
+            Thread thread = new Thread(body, "stress-" + t);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
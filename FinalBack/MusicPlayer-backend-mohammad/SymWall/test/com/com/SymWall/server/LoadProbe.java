@@ -0,0 +1,103 @@
+package com.com.SymWall.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small load generator used to compare the server modes.
+ * It parks a number of idle connections first (like phones left on the home screen) and then
+ * measures request latency for a set of active clients.
+ *
+ * Usage: LoadProbe [host] [port] [idleConnections] [activeClients] [requestsPerClient]
+ * Example: start "SocketServer blocking" and then "SocketServer virtual", run LoadProbe 127.0.0.1 8081 500 50 200
+ */
+public class LoadProbe {
+
+    private static final String REQUEST = "{\"action\":\"get_salt\",\"data\":{\"email\":\"probe@symwall.local\"}}\n";
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "127.0.0.1";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8081;
+        int idleConnections = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int activeClients = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        int requestsPerClient = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+
+        List<Socket> idle = new ArrayList<>();
+        for (int i = 0; i < idleConnections; i++) {
+            try {
+                idle.add(new Socket(host, port));
+            } catch (IOException e) {
+                System.out.println("Could only open " + i + " idle connections: " + e.getMessage());
+                break;
+            }
+        }
+
+        long[][] latencies = new long[activeClients][];
+        AtomicInteger timeouts = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(activeClients);
+        long start = System.nanoTime();
+        for (int c = 0; c < activeClients; c++) {
+            int client = c;
+            Thread thread = new Thread(() -> {
+                latencies[client] = runClient(host, port, requestsPerClient, timeouts);
+                done.countDown();
+            });
+            thread.start();
+        }
+        done.await();
+        long elapsedNanos = System.nanoTime() - start;
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("idle=%d active=%d completed=%d timeouts=%d elapsed=%dms throughput=%.0f req/s%n",
+                idle.size(), activeClients, all.length, timeouts.get(), elapsedNanos / 1_000_000,
+                all.length / (elapsedNanos / 1e9));
+        if (all.length > 0) {
+            System.out.printf("latency p50=%.2fms p99=%.2fms max=%.2fms%n",
+                    percentile(all, 0.50) / 1e6, percentile(all, 0.99) / 1e6, all[all.length - 1] / 1e6);
+        }
+
+        for (Socket socket : idle) {
+            socket.close();
+        }
+    }
+
+    private static long[] runClient(String host, int port, int requests, AtomicInteger timeouts) {
+        long[] samples = new long[requests];
+        int completed = 0;
+        try (Socket socket = new Socket(host, port)) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            byte[] request = REQUEST.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < requests; i++) {
+                long sent = System.nanoTime();
+                out.write(request);
+                out.flush();
+                if (in.readLine() == null) {
+                    break;
+                }
+                samples[completed++] = System.nanoTime() - sent;
+            }
+        } catch (SocketTimeoutException e) {
+            timeouts.incrementAndGet();
+        } catch (IOException e) {
+            System.out.println("Client error: " + e.getMessage());
+        }
+        return Arrays.copyOf(samples, completed);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}